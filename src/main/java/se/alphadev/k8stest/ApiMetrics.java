@@ -0,0 +1,217 @@
+package se.alphadev.k8stest;
+
+import io.fabric8.kubernetes.client.utils.Serialization;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Metrics of the API requests of a cluster client, per verb, resource kind and namespace: number of requests,
+ * errors, bytes sent and received, and a latency histogram. Latency is until the response headers are received,
+ * so a watch counts the time to open it, and its bytes as they are read.
+ */
+@Slf4j
+public class ApiMetrics {
+
+    /**
+     * Metrics of the requests with the same verb, kind and namespace. The namespace is empty for cluster scoped
+     * resources, and latencies are in milliseconds.
+     */
+    @Value
+    public static class Entry {
+        String verb;
+        String kind;
+        String namespace;
+        long count;
+        long errors;
+        long bytesSent;
+        long bytesReceived;
+        double meanMillis;
+        double p50Millis;
+        double p90Millis;
+        double p99Millis;
+        double maxMillis;
+    }
+
+    @Value
+    static class Key {
+        String verb;
+        String kind;
+        String namespace;
+    }
+
+    private static class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder bytesSent = new LongAdder();
+        final LongAdder bytesReceived = new LongAdder();
+    }
+
+    private final Map<Key, Stats> stats = new ConcurrentHashMap<>();
+
+    ApiMetrics() {
+    }
+
+    /**
+     * @return metrics of all requests so far, but those of namespaces taken by {@link #snapshotAndReset(String)},
+     * the most frequent first
+     */
+    public List<Entry> snapshot() {
+        return stats.entrySet().stream()
+                .map(e -> entry(e.getKey(), e.getValue()))
+                .sorted(Comparator.comparingLong(Entry::getCount).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return metrics of the requests to resources in the namespace, or of the namespace itself
+     */
+    public List<Entry> snapshot(String namespace) {
+        return snapshot().stream()
+                .filter(e -> e.getNamespace().equals(namespace))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Take the metrics of the namespace, so the next lease of a namespace with the same name starts from zero.
+     * @return metrics of the requests to resources in the namespace, or of the namespace itself, since last taken
+     */
+    List<Entry> snapshotAndReset(String namespace) {
+        return stats.keySet().stream()
+                .filter(key -> key.getNamespace().equals(namespace))
+                .map(key -> {
+                    Stats removed = stats.remove(key);
+                    return removed != null ? entry(key, removed) : null;
+                })
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingLong(Entry::getCount).reversed())
+                .collect(Collectors.toList());
+    }
+
+    void write(Path file, List<Entry> entries) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Serialization.jsonMapper().writerWithDefaultPrettyPrinter().writeValue(file.toFile(), entries);
+            log.info("API metrics written to {}", file);
+        } catch (IOException e) {
+            log.warn("Unable to write API metrics to {}, {}", file, e.getMessage());
+        }
+    }
+
+    Interceptor interceptor() {
+        return chain -> {
+            Request request = chain.request();
+            Stats requestStats = stats.computeIfAbsent(key(request), k -> new Stats());
+            if (request.body() != null && request.body().contentLength() > 0) {
+                requestStats.bytesSent.add(request.body().contentLength());
+            }
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException | RuntimeException e) {
+                requestStats.latency.record(System.nanoTime() - start);
+                requestStats.errors.increment();
+                throw e;
+            }
+            requestStats.latency.record(System.nanoTime() - start);
+            if (response.code() >= 400) {
+                requestStats.errors.increment();
+            }
+            ResponseBody body = response.body();
+            if (body == null)
+                return response;
+            ForwardingSource counting = new ForwardingSource(body.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read > 0) {
+                        requestStats.bytesReceived.add(read);
+                    }
+                    return read;
+                }
+            };
+            return response.newBuilder()
+                    .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(counting)))
+                    .build();
+        };
+    }
+
+    /**
+     * @return key of the request, with the verb as in Kubernetes audit logs, and the resource, or resource/subresource, as kind.
+     * The creation of a namespace counts to the created namespace.
+     */
+    static Key key(Request request) {
+        HttpUrl url = request.url();
+        List<String> segments = url.pathSegments().stream().filter(s -> !s.isEmpty()).collect(Collectors.toList());
+        int prefix = !segments.isEmpty() && segments.get(0).equals("apis") ? 3 : 2;
+        List<String> rest = segments.size() > prefix ? segments.subList(prefix, segments.size()) : Arrays.asList("");
+        String namespace = "";
+        if (rest.size() > 2 && rest.get(0).equals("namespaces")) {
+            namespace = rest.get(1);
+            rest = rest.subList(2, rest.size());
+        } else if (rest.size() == 2 && rest.get(0).equals("namespaces")) {
+            namespace = rest.get(1);
+        }
+        String kind = rest.size() > 2 ? rest.get(0) +"/"+ rest.get(2) : rest.get(0);
+        boolean named = rest.size() > 1;
+        if (request.method().equals("POST") && kind.equals("namespaces") && !named) {
+            namespace = createdName(request);
+        }
+        return new Key(verb(request.method(), named, "true".equals(url.queryParameter("watch"))), kind, namespace);
+    }
+
+    /**
+     * @return name of the created resource, from the request body, or an empty string if unknown
+     */
+    private static String createdName(Request request) {
+        if (request.body() == null)
+            return "";
+        try {
+            Buffer body = new Buffer();
+            request.body().writeTo(body);
+            return Serialization.jsonMapper().readTree(body.readUtf8()).path("metadata").path("name").asText("");
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String verb(String method, boolean named, boolean watch) {
+        switch (method) {
+            case "GET": return watch ? "watch" : named ? "get" : "list";
+            case "POST": return "create";
+            case "PUT": return "update";
+            case "PATCH": return "patch";
+            case "DELETE": return named ? "delete" : "deletecollection";
+            default: return method.toLowerCase();
+        }
+    }
+
+    private static Entry entry(Key key, Stats stats) {
+        LatencyHistogram latency = stats.latency;
+        return new Entry(key.getVerb(), key.getKind(), key.getNamespace(),
+                latency.count(), stats.errors.sum(), stats.bytesSent.sum(), stats.bytesReceived.sum(),
+                latency.meanMillis(), latency.percentileMillis(50), latency.percentileMillis(90),
+                latency.percentileMillis(99), latency.maxMillis());
+    }
+}
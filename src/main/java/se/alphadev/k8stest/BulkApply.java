@@ -0,0 +1,123 @@
+package se.alphadev.k8stest;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies resources tier by tier, in dependency order, with the resources of a tier applied concurrently.
+ */
+@Slf4j
+class BulkApply {
+
+    private static final List<Set<String>> TIERS = ImmutableList.of(
+            ImmutableSet.of("Namespace", "CustomResourceDefinition"),
+            ImmutableSet.of("ConfigMap", "Secret", "ServiceAccount", "Role", "RoleBinding", "ClusterRole",
+                    "ClusterRoleBinding", "PersistentVolume", "PersistentVolumeClaim"),
+            ImmutableSet.of("Service"));
+
+    private final Function<HasMetadata, HasMetadata> apply;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+
+    BulkApply(Function<HasMetadata, HasMetadata> apply, ExecutorService executor, int maxInFlight) {
+        this.apply = apply;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @return the applied resources, in the order they were given
+     */
+    List<HasMetadata> apply(List<HasMetadata> resources) {
+        long start = System.nanoTime();
+        Map<Integer, List<Integer>> tiers = resources.isEmpty() ? new TreeMap<>() : tiers(resources);
+        HasMetadata[] applied = new HasMetadata[resources.size()];
+        List<Applied> report = new ArrayList<>();
+
+        for (List<Integer> tier : tiers.values()) {
+            List<Applied> tierReport = applyConcurrently(tier.stream().map(resources::get).collect(Collectors.toList()));
+            for (int i = 0; i < tier.size(); i++) {
+                applied[tier.get(i)] = tierReport.get(i).getResource();
+            }
+            report.addAll(tierReport);
+        }
+        logReport(report, System.nanoTime() - start);
+        return ImmutableList.copyOf(applied);
+    }
+
+    private List<Applied> applyConcurrently(List<HasMetadata> tier) {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<CompletableFuture<Applied>> futures = new ArrayList<>();
+        try {
+            for (HasMetadata resource : tier) {
+                inFlight.acquire();
+                futures.add(K8sExecutors.supplyAsync(() -> {
+                    try {
+                        long start = System.nanoTime();
+                        HasMetadata result = apply.apply(resource);
+                        return new Applied(result, (System.nanoTime() - start) / 1_000_000);
+                    } finally {
+                        inFlight.release();
+                    }
+                }, executor));
+            }
+            return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new K8sClusterException(e);
+        } catch (CompletionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e.getCause() instanceof K8sClusterException ? (K8sClusterException) e.getCause() : new K8sClusterException(e.getCause());
+        }
+    }
+
+    /**
+     * @return indexes of the resources, grouped by tier
+     */
+    private static Map<Integer, List<Integer>> tiers(List<HasMetadata> resources) {
+        Map<Integer, List<Integer>> tiers = new TreeMap<>();
+        for (int i = 0; i < resources.size(); i++) {
+            tiers.computeIfAbsent(tier(resources.get(i)), t -> new ArrayList<>()).add(i);
+        }
+        return tiers;
+    }
+
+    /**
+     * @return tier of the resource. Workloads, and kinds not known, are applied last.
+     */
+    static int tier(HasMetadata resource) {
+        for (int i = 0; i < TIERS.size(); i++) {
+            if (TIERS.get(i).contains(resource.getKind()))
+                return i;
+        }
+        return TIERS.size();
+    }
+
+    private static void logReport(List<Applied> report, long elapsedNanos) {
+        log.info("Applied {} resources in {} ms", report.size(), elapsedNanos / 1_000_000);
+        report.stream()
+            .sorted(Comparator.comparingLong(Applied::getMillis).reversed())
+            .forEach(a -> log.info("  {} ms {} {}", a.getMillis(), a.getResource().getKind(), a.getResource().getMetadata().getName()));
+    }
+
+    @Value
+    static class Applied {
+        HasMetadata resource;
+        long millis;
+    }
+}
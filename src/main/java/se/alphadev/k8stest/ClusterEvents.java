@@ -0,0 +1,87 @@
+package se.alphadev.k8stest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.awaitility.core.ConditionTimeoutException;
+
+/**
+ * Records cluster operations as flight recorder events, to see in a JFR dump which phase of a test run is slow.
+ * Does nothing on JVMs without flight recorder, and costs an allocation and a check per operation when it is not
+ * recording.
+ */
+class ClusterEvents {
+
+    interface Span {
+        void end(Throwable failure);
+    }
+
+    static final Span NO_SPAN = failure -> {};
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private ClusterEvents() {
+    }
+
+    static Span begin(String operation, String kind, String namespace, String name) {
+        return AVAILABLE ? ClusterOperationEvent.begin(operation, kind, namespace, name) : NO_SPAN;
+    }
+
+    static void record(String operation, String kind, String namespace, String name, Runnable action) {
+        record(operation, kind, namespace, name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    static <T> T record(String operation, String kind, String namespace, String name, Supplier<T> action) {
+        Span span = begin(operation, kind, namespace, name);
+        try {
+            T result = action.get();
+            span.end(null);
+            return result;
+        } catch (RuntimeException | Error e) {
+            span.end(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Record an operation ending when its future completes, like creating a resource and waiting for it to be ready.
+     */
+    static <T> CompletableFuture<T> recordAsync(String operation, String kind, String namespace, String name,
+            Supplier<CompletableFuture<T>> action) {
+        Span span = begin(operation, kind, namespace, name);
+        if (span == NO_SPAN)
+            return action.get();
+        try {
+            return action.get().whenComplete((result, failure) -> span.end(failure));
+        } catch (RuntimeException | Error e) {
+            span.end(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return success, timeout if the failure, or a cause of it, is a timeout, or else failure
+     */
+    static String outcome(Throwable failure) {
+        if (failure == null)
+            return "success";
+        for (Throwable cause = failure; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            if (cause instanceof TimeoutException || cause instanceof ConditionTimeoutException
+                    || cause instanceof K8sClusterTimeoutException)
+                return "timeout";
+        }
+        return "failure";
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, ClusterEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package se.alphadev.k8stest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static se.alphadev.k8stest.K8sCluster.RESOURCES_DIR;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coordinates JVMs using the same local cluster, through files in {user.home}/.k8s-test.
+ * <p>
+ * A lock file serializes creating, starting and deleting the cluster. Each JVM using the cluster
+ * holds a lease file locked for as long as it uses the cluster, so a lease file that can be locked
+ * by another JVM belongs to a JVM no longer running.
+ */
+@Slf4j
+class ClusterLease {
+
+    private static final Map<String, ClusterLease> LEASES = new HashMap<>();
+    private static final Map<String, Object> JVM_LOCKS = new HashMap<>();
+
+    private final String clusterName;
+    private final Path leaseDir;
+    private Path leaseFile;
+    private FileChannel leaseChannel;
+    private FileLock leaseLock;
+    private int users;
+
+    private ClusterLease(String clusterName) {
+        this.clusterName = clusterName;
+        this.leaseDir = Paths.get(RESOURCES_DIR, "leases", clusterName);
+    }
+
+    /**
+     * @return the lease of this JVM on the cluster, registered on first acquire
+     */
+    static synchronized ClusterLease acquire(String clusterName) {
+        ClusterLease lease = LEASES.computeIfAbsent(clusterName, ClusterLease::new);
+        lease.register();
+        return lease;
+    }
+
+    /**
+     * Run the action holding the lock on the cluster, shared by all threads and JVMs.
+     */
+    static <T> T withClusterLock(String clusterName, Supplier<T> action) {
+        Object jvmLock;
+        synchronized (JVM_LOCKS) {
+            jvmLock = JVM_LOCKS.computeIfAbsent(clusterName, n -> new Object());
+        }
+        synchronized (jvmLock) {
+            Path lockFile = Paths.get(RESOURCES_DIR, clusterName +".lock");
+            try (FileChannel channel = FileChannel.open(lockFile, CREATE, WRITE);
+                 FileLock lock = channel.lock()) {
+                return action.get();
+            } catch (IOException e) {
+                throw new K8sClusterException(e);
+            }
+        }
+    }
+
+    private synchronized void register() {
+        if (users++ > 0)
+            return;
+        try {
+            Files.createDirectories(leaseDir);
+            leaseFile = leaseDir.resolve(UUID.randomUUID() +".lease");
+            leaseChannel = FileChannel.open(leaseFile, CREATE, WRITE);
+            leaseLock = leaseChannel.lock();
+            leaseChannel.write(ByteBuffer.wrap(ManagementFactory.getRuntimeMXBean().getName().getBytes(UTF_8)));
+            log.info("Registered lease {} on cluster {}", leaseFile.getFileName(), clusterName);
+        } catch (IOException e) {
+            throw new K8sClusterException(e);
+        }
+    }
+
+    /**
+     * Release the lease, when the last user in this JVM releases it.
+     * @return true if this JVM no longer uses the cluster
+     */
+    synchronized boolean release() {
+        if (users == 0 || --users > 0)
+            return false;
+        try {
+            leaseLock.release();
+            leaseChannel.close();
+            Files.deleteIfExists(leaseFile);
+            log.info("Released lease {} on cluster {}", leaseFile.getFileName(), clusterName);
+        } catch (IOException e) {
+            log.warn("Unable to release lease {}", leaseFile, e);
+        }
+        return true;
+    }
+
+    /**
+     * @return number of other running JVMs using the cluster. Lease files of JVMs no longer running are deleted.
+     */
+    synchronized int otherLiveLeases() {
+        int live = 0;
+        if (!Files.isDirectory(leaseDir))
+            return live;
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(leaseDir, "*.lease")) {
+            for (Path lease : leases) {
+                if (lease.equals(leaseFile))
+                    continue;
+                if (isLive(lease)) {
+                    live++;
+                } else {
+                    log.info("Delete stale lease {} on cluster {}", lease.getFileName(), clusterName);
+                    Files.deleteIfExists(lease);
+                }
+            }
+        } catch (IOException e) {
+            throw new K8sClusterException(e);
+        }
+        return live;
+    }
+
+    private static boolean isLive(Path lease) {
+        try (FileChannel channel = FileChannel.open(lease, WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null)
+                return true;
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package se.alphadev.k8stest;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a cluster operation. Only loaded when the JVM has flight recorder, see {@link ClusterEvents}.
+ */
+@Name("se.alphadev.k8stest.ClusterOperation")
+@Label("Cluster Operation")
+@Description("Operation of k8s-test on a test cluster, from connect to tear down")
+@Category({ "k8s-test" })
+@StackTrace(false)
+class ClusterOperationEvent extends Event implements ClusterEvents.Span {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Kind")
+    String kind;
+
+    @Label("Namespace")
+    String namespace;
+
+    @Label("Name")
+    String name;
+
+    @Label("Outcome")
+    @Description("success, failure or timeout")
+    String outcome;
+
+    @Label("Error")
+    String error;
+
+    static ClusterEvents.Span begin(String operation, String kind, String namespace, String name) {
+        ClusterOperationEvent event = new ClusterOperationEvent();
+        if (!event.isEnabled())
+            return ClusterEvents.NO_SPAN;
+        event.operation = operation;
+        event.kind = kind;
+        event.namespace = namespace;
+        event.name = name;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void end(Throwable failure) {
+        end();
+        if (!shouldCommit())
+            return;
+        outcome = ClusterEvents.outcome(failure);
+        error = failure != null ? failure.toString() : null;
+        commit();
+    }
+}
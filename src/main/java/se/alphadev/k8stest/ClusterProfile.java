@@ -0,0 +1,63 @@
+package se.alphadev.k8stest;
+
+import java.time.Duration;
+import java.util.Set;
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+
+/**
+ * Shape of the local k3d cluster, used when the cluster is created.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ClusterProfile {
+
+    @Builder.Default
+    int servers = 1;
+
+    @Builder.Default
+    int agents = 1;
+
+    /**
+     * k3s components not deployed, like traefik, servicelb, metrics-server and local-storage
+     */
+    @Singular("disable")
+    Set<String> disabledComponents;
+
+    /**
+     * Keep the k3s data dir of the server in tmpfs, when /dev/shm is available
+     */
+    boolean tmpfsDataDir;
+
+    /**
+     * Wait for the cluster to be ready when created
+     */
+    @Builder.Default
+    boolean waitForReady = true;
+
+    /**
+     * Time to wait for the cluster to be created
+     */
+    @Builder.Default
+    Duration timeout = Duration.ofSeconds(120);
+
+    /**
+     * One server and one agent, with the default k3s components
+     */
+    public static ClusterProfile defaults() {
+        return builder().build();
+    }
+
+    /**
+     * One server and no agents, without ingress, service load balancer, metrics and storage provisioner,
+     * with the data dir in tmpfs
+     */
+    public static ClusterProfile lean() {
+        return builder()
+                .agents(0)
+                .disable("traefik").disable("servicelb").disable("metrics-server").disable("local-storage")
+                .tmpfsDataDir(true)
+                .build();
+    }
+}
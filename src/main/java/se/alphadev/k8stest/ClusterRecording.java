@@ -0,0 +1,337 @@
+package se.alphadev.k8stest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Pipe;
+
+/**
+ * Records the API requests and responses of a cluster client to a gzipped JSON file, and replays them
+ * in place of the cluster. Watches are made over streamed HTTP instead of websockets, so that their events
+ * can be recorded, and each event is replayed once as many requests have been served as when it was recorded.
+ * The test namespace is stored as a variable, so a unique namespace can be replayed.
+ */
+@Slf4j
+class ClusterRecording {
+
+    static final String MODE_PROPERTY = "k8s-test.recording";
+
+    private static final String NAMESPACE_VARIABLE = "${namespace}";
+    private static final String REPLAY_URL = "http://replay.k8s-test.invalid/";
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final List<String> IGNORED_PARAMETERS = Arrays.asList("resourceVersion", "timeoutSeconds", "allowWatchBookmarks");
+    private static final long MAX_WATCH_BUFFER = 16 * 1024 * 1024;
+
+    enum Mode { RECORD, REPLAY }
+
+    @Data @NoArgsConstructor @AllArgsConstructor
+    static class Exchange {
+        private String key;
+        private int code;
+        private String body;
+        private boolean watch;
+        private List<WatchEvent> events;
+    }
+
+    @Data @NoArgsConstructor @AllArgsConstructor
+    static class WatchEvent {
+        /** Number of requests served when the event was received */
+        private int after;
+        private String line;
+    }
+
+    private final Path file;
+    private final Mode mode;
+    private final Supplier<String> namespace;
+    private final List<Exchange> exchanges = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger served = new AtomicInteger();
+    private final Map<String, AtomicInteger> replayed = new HashMap<>();
+    private final Map<String, List<Exchange>> recorded = new HashMap<>();
+    private final List<WatchStream> watches = new ArrayList<>();
+
+    ClusterRecording(Path file, Mode mode, Supplier<String> namespace) {
+        this.file = file;
+        this.mode = mode;
+        this.namespace = namespace;
+        if (mode == Mode.REPLAY) {
+            load().forEach(e -> recorded.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e));
+        }
+    }
+
+    /**
+     * @return recording of the file in the mode of the {@code k8s-test.recording} property, {@code record}, {@code replay}
+     * or {@code off}. If not set, a recorded file is replayed, or else recorded. Null if off.
+     */
+    static ClusterRecording of(Path file, Supplier<String> namespace) {
+        String mode = Utils.testProperty(MODE_PROPERTY);
+        if ("off".equalsIgnoreCase(mode))
+            return null;
+        if (mode == null)
+            return new ClusterRecording(file, Files.exists(file) ? Mode.REPLAY : Mode.RECORD, namespace);
+        return new ClusterRecording(file, Mode.valueOf(mode.trim().toUpperCase()), namespace);
+    }
+
+    boolean isReplay() {
+        return mode == Mode.REPLAY;
+    }
+
+    /**
+     * @return config of a client served by the replay interceptor, never connecting anywhere
+     */
+    Config replayConfig() {
+        return new ConfigBuilder(Config.empty()).withMasterUrl(REPLAY_URL).withNamespace(namespace.get()).build();
+    }
+
+    Interceptor interceptor() {
+        return mode == Mode.REPLAY ? this::replay : this::record;
+    }
+
+    /**
+     * Write the recording, or end the replayed watches.
+     */
+    void close() {
+        if (mode == Mode.RECORD) {
+            save();
+        } else {
+            synchronized (watches) {
+                watches.forEach(WatchStream::close);
+                watches.clear();
+            }
+        }
+    }
+
+    private Response record(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        if (isWebSocketUpgrade(request))
+            return httpWatchInstead(request);
+
+        Response response = chain.proceed(request);
+        ResponseBody body = response.body();
+        if (body == null)
+            return response;
+
+        if (isWatch(request.url())) {
+            List<WatchEvent> events = Collections.synchronizedList(new ArrayList<>());
+            exchanges.add(new Exchange(key(request), response.code(), null, true, events));
+            return response.newBuilder()
+                    .body(ResponseBody.create(body.contentType(), -1, Okio.buffer(new RecordingSource(body, events))))
+                    .build();
+        }
+
+        byte[] bytes = body.bytes();
+        exchanges.add(new Exchange(key(request), response.code(), normalize(new String(bytes, UTF_8)), false, null));
+        served.incrementAndGet();
+        return response.newBuilder().body(ResponseBody.create(body.contentType(), bytes)).build();
+    }
+
+    private Response replay(Interceptor.Chain chain) {
+        Request request = chain.request();
+        if (isWebSocketUpgrade(request))
+            return httpWatchInstead(request);
+
+        String key = key(request);
+        Exchange exchange = next(key);
+        if (exchange == null) {
+            log.warn("No recorded response to {} in {}, record again", key, file);
+            return response(request, 404, "{\"kind\":\"Status\",\"apiVersion\":\"v1\",\"status\":\"Failure\",\"reason\":\"NotFound\","
+                    + "\"code\":404,\"message\":\"No recorded response to "+ key +"\"}");
+        }
+
+        if (exchange.isWatch()) {
+            WatchStream stream = new WatchStream(exchange.getEvents());
+            synchronized (watches) {
+                watches.add(stream);
+                stream.deliver(served.get());
+            }
+            return new Response.Builder()
+                    .request(request).protocol(Protocol.HTTP_1_1).code(exchange.getCode()).message("")
+                    .body(ResponseBody.create(JSON, -1, Okio.buffer(stream.pipe.source())))
+                    .build();
+        }
+
+        Response response = response(request, exchange.getCode(), exchange.getBody().replace(NAMESPACE_VARIABLE, namespace.get()));
+        int count = served.incrementAndGet();
+        synchronized (watches) {
+            watches.forEach(w -> w.deliver(count));
+        }
+        return response;
+    }
+
+    /**
+     * @return the next recorded exchange of the request, the last one when all are replayed, or null if none
+     */
+    private synchronized Exchange next(String key) {
+        List<Exchange> candidates = recorded.get(key);
+        if (candidates == null)
+            return null;
+        int i = replayed.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+        if (i < candidates.size())
+            return candidates.get(i);
+        Exchange last = candidates.get(candidates.size() - 1);
+        return last.isWatch() ? new Exchange(key, last.getCode(), null, true, Collections.emptyList()) : last;
+    }
+
+    private String key(Request request) {
+        HttpUrl url = request.url();
+        StringBuilder key = new StringBuilder(request.method()).append(' ').append(url.encodedPath());
+        String separator = "?";
+        for (String name : new TreeSet<>(url.queryParameterNames())) {
+            if (IGNORED_PARAMETERS.contains(name))
+                continue;
+            for (String value : url.queryParameterValues(name)) {
+                key.append(separator).append(name).append('=').append(value);
+                separator = "&";
+            }
+        }
+        return normalize(key.toString());
+    }
+
+    private String normalize(String s) {
+        return s.replace(namespace.get(), NAMESPACE_VARIABLE);
+    }
+
+    private static boolean isWatch(HttpUrl url) {
+        return "true".equals(url.queryParameter("watch"));
+    }
+
+    private static boolean isWebSocketUpgrade(Request request) {
+        return "websocket".equalsIgnoreCase(request.header("Upgrade"));
+    }
+
+    /**
+     * Refuse the websocket upgrade with 200 OK, which makes the client watch over a streamed HTTP request.
+     */
+    private static Response httpWatchInstead(Request request) {
+        return response(request, 200, "");
+    }
+
+    private static Response response(Request request, int code, String body) {
+        return new Response.Builder()
+                .request(request).protocol(Protocol.HTTP_1_1).code(code).message("")
+                .body(ResponseBody.create(JSON, body))
+                .build();
+    }
+
+    private List<Exchange> load() {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return Serialization.jsonMapper().readValue(in, new TypeReference<List<Exchange>>() {});
+        } catch (IOException e) {
+            throw new K8sClusterException("Unable to read recording "+ file, e);
+        }
+    }
+
+    private void save() {
+        List<Exchange> copy;
+        synchronized (exchanges) {
+            if (exchanges.isEmpty())
+                return;
+            copy = new ArrayList<>(exchanges);
+        }
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+                Serialization.jsonMapper().writeValue(out, copy);
+            }
+            log.info("Recorded {} requests to {}", copy.size(), file);
+        } catch (IOException e) {
+            throw new K8sClusterException("Unable to write recording "+ file, e);
+        }
+    }
+
+    /**
+     * Records each line of a watch stream as an event.
+     */
+    private class RecordingSource extends ForwardingSource {
+        private final List<WatchEvent> events;
+        private final Buffer line = new Buffer();
+
+        RecordingSource(ResponseBody body, List<WatchEvent> events) {
+            super(body.source());
+            this.events = events;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+                sink.copyTo(line, sink.size() - read, read);
+                long newline;
+                while ((newline = line.indexOf((byte) '\n')) != -1) {
+                    String event = line.readUtf8(newline);
+                    line.skip(1);
+                    events.add(new WatchEvent(served.get(), normalize(event)));
+                }
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Replayed watch stream, written as the recorded events are due, and kept open until the replay is closed.
+     */
+    private class WatchStream {
+        private final Pipe pipe = new Pipe(MAX_WATCH_BUFFER);
+        private final BufferedSink sink = Okio.buffer(pipe.sink());
+        private final List<WatchEvent> events;
+        private int next;
+
+        WatchStream(List<WatchEvent> events) {
+            this.events = events;
+        }
+
+        void deliver(int served) {
+            try {
+                while (next < events.size() && events.get(next).getAfter() <= served) {
+                    sink.writeUtf8(events.get(next++).getLine().replace(NAMESPACE_VARIABLE, namespace.get())).writeByte('\n');
+                }
+                sink.flush();
+            } catch (IOException e) {
+                log.debug("Replayed watch closed", e);
+            }
+        }
+
+        void close() {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                log.debug("Unable to close replayed watch", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package se.alphadev.k8stest;
+
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Assigns local cluster handles to the clusters of a pool, by hash of a shard key, or else
+ * to the cluster with the fewest handles assigned in this JVM.
+ */
+@Slf4j
+class ClusterScheduler {
+
+    static final String CLUSTER_NAME = "k3s-test-cluster";
+
+    /**
+     * Scheduler shared by all local cluster handles in the JVM
+     */
+    static final ClusterScheduler SHARED = new ClusterScheduler();
+
+    private int[] assigned = new int[0];
+
+    /**
+     * @return index of the cluster assigned, in a pool of {@code poolSize} clusters
+     */
+    synchronized int assign(int poolSize, String shardKey) {
+        if (assigned.length < poolSize) {
+            assigned = Arrays.copyOf(assigned, poolSize);
+        }
+        int index = shardKey != null ? Math.floorMod(shardKey.hashCode(), poolSize) : leastLoaded(poolSize);
+        assigned[index]++;
+        log.debug("Assigned cluster {}, {} handles", clusterName(index), assigned[index]);
+        return index;
+    }
+
+    synchronized void release(int index) {
+        if (index < assigned.length && assigned[index] > 0) {
+            assigned[index]--;
+        }
+    }
+
+    /**
+     * @return name of the cluster at the index. The first cluster of a pool is the single cluster used without a pool.
+     */
+    static String clusterName(int index) {
+        return index == 0 ? CLUSTER_NAME : CLUSTER_NAME +"-"+ index;
+    }
+
+    private int leastLoaded(int poolSize) {
+        int index = 0;
+        for (int i = 1; i < poolSize; i++) {
+            if (assigned[i] < assigned[index]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+}
@@ -1,12 +1,9 @@
 package se.alphadev.k8stest;
 
-import static se.alphadev.k8stest.Utils.copyToResourcesdDir;
-
-import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.Config;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import java.io.File;
-import java.nio.file.Path;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -19,14 +16,30 @@ class CustomCluster extends K8sCluster {
         this.customConfig = customConfig;
     }
 
+    protected CustomCluster(K8sClusterBuilder builder, File customConfig) {
+        super(builder);
+        this.customConfig = customConfig;
+    }
+
     protected KubernetesClient doConnect() {
+        return newClient(kubeconfig());
+    }
+
+    /**
+     * @return client config from the kubeconfig file, with relative certificate and key files resolved
+     * against the dir of the kubeconfig, like kubectl does
+     */
+    Config kubeconfig() {
         try {
-            Path config = copyToResourcesdDir(customConfig.getPath(), "/custom-config", false);
-            System.setProperty("kubeconfig", config.toString());
-            return new DefaultKubernetesClient();
+            return Config.fromKubeconfig(null, Utils.readToString(customConfig.getPath()), customConfig.getAbsolutePath());
         } catch (KubernetesClientException e) {
             throw new K8sClusterException(e);
         }
     }
 
+    @Override
+    public String clusterKey() {
+        return "config:"+ customConfig.getAbsolutePath();
+    }
+
 }
@@ -0,0 +1,198 @@
+package se.alphadev.k8stest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static se.alphadev.k8stest.K8sCluster.RESOURCES_DIR;
+
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Imports images into the nodes of a local cluster, from tarballs in {user.home}/.k8s-test/images
+ * named by image reference, next to the id of the saved image. Images missing in the cache are pulled
+ * and saved with docker, and images already on every node with the same id are skipped. A cached
+ * image needs no docker, so a tag is not pulled again once cached: pin the digest, like
+ * nginx@sha256:..., or delete the tarball to refresh it.
+ */
+@Slf4j
+class ImagePreloader {
+
+    static final Path IMAGES_DIR = Paths.get(RESOURCES_DIR, "images");
+
+    private static final Duration DOCKER_TIMEOUT = Duration.ofMinutes(5);
+
+    /**
+     * Runs a command, like docker or k3d
+     */
+    interface Exec {
+        /**
+         * @return trimmed stdout of the command
+         * @throws K8sClusterException if the command fails
+         */
+        String exec(List<String> argv);
+    }
+
+    private final String k3dExec;
+    private final ExecutorService executor;
+    private final Path imagesDir;
+    private final Exec exec;
+
+    ImagePreloader(String k3dExec, ExecutorService executor) {
+        this(k3dExec, executor, IMAGES_DIR,
+                argv -> ShellExec.command(argv).timeout(DOCKER_TIMEOUT).run().getStdout().trim());
+    }
+
+    ImagePreloader(String k3dExec, ExecutorService executor, Path imagesDir, Exec exec) {
+        this.k3dExec = k3dExec;
+        this.executor = executor;
+        this.imagesDir = imagesDir;
+        this.exec = exec;
+    }
+
+    /**
+     * Import the images into the cluster concurrently. Images that fail to import are logged, and pulled
+     * by the cluster when used.
+     */
+    void preload(String clusterName, List<String> images) {
+        if (images.isEmpty())
+            return;
+        long start = System.nanoTime();
+        List<String> nodes;
+        try {
+            nodes = nodes(clusterName);
+        } catch (K8sClusterException e) {
+            log.warn("Unable to preload images, {}", e.getMessage());
+            return;
+        }
+        CompletableFuture.allOf(images.stream()
+                .map(image -> K8sExecutors.supplyAsync(() -> preload(clusterName, nodes, image), executor)
+                    .exceptionally(e -> {
+                        log.warn("Unable to preload image {}, {}", image, e.getMessage());
+                        return null;
+                    }))
+                .toArray(CompletableFuture[]::new))
+            .join();
+        log.info("Preloaded {} images into {} in {} ms", images.size(), clusterName, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private Void preload(String clusterName, List<String> nodes, String image) {
+        Path tarball = tarball(image);
+        String cachedId = cachedImageId(image);
+        String imageId = cachedId != null ? cachedId : imageId(image);
+        if (nodes.stream().allMatch(node -> imageId.equals(nodeImageId(node, image)))) {
+            log.info("Image {} is present in {}", image, clusterName);
+            return null;
+        }
+        if (cachedId == null) {
+            save(image, imageId);
+        }
+        log.info("Import image {} into {}", image, clusterName);
+        exec(k3dExec, "image", "import", "--cluster", clusterName, tarball.toString());
+        return null;
+    }
+
+    /**
+     * @return id of the image in docker, pulled if not present
+     */
+    private String imageId(String image) {
+        try {
+            return exec("docker", "image", "inspect", "--format", "{{.Id}}", image);
+        } catch (K8sClusterException e) {
+            log.info("Pull image {}", image);
+            exec("docker", "pull", image);
+            return exec("docker", "image", "inspect", "--format", "{{.Id}}", image);
+        }
+    }
+
+    /**
+     * @return tarball of the image in the cache, named by the reference, with the digest of a pinned
+     * reference, and a hash of the reference to tell apart references that read the same as a file name
+     */
+    Path tarball(String image) {
+        String name = image.replaceAll("[^A-Za-z0-9._-]", "_");
+        String hash = Hashing.sha256().hashString(image, UTF_8).toString().substring(0, 12);
+        return imagesDir.resolve(name +"-"+ hash +".tar");
+    }
+
+    private Path idFile(String image) {
+        Path tarball = tarball(image);
+        return tarball.resolveSibling(tarball.getFileName().toString().replaceAll("\\.tar$", ".id"));
+    }
+
+    /**
+     * @return id of the image saved in the cache, or null if not cached
+     */
+    private String cachedImageId(String image) {
+        Path idFile = idFile(image);
+        if (!Files.exists(tarball(image)) || !Files.exists(idFile))
+            return null;
+        try {
+            String imageId = new String(Files.readAllBytes(idFile), UTF_8).trim();
+            return imageId.isEmpty() ? null : imageId;
+        } catch (IOException e) {
+            log.warn("Unable to read cached id of image {}, {}", image, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Save the image from docker to the cache, the id first, so a cached tarball always has its id
+     */
+    private void save(String image, String imageId) {
+        try {
+            Files.createDirectories(imagesDir);
+            Path tmpId = Files.createTempFile(imagesDir, "image", ".id.tmp");
+            Files.write(tmpId, imageId.getBytes(UTF_8));
+            Files.move(tmpId, idFile(image), REPLACE_EXISTING, ATOMIC_MOVE);
+            Path tmp = Files.createTempFile(imagesDir, "image", ".tar.tmp");
+            exec("docker", "save", "--output", tmp.toString(), image);
+            Files.move(tmp, tarball(image), REPLACE_EXISTING, ATOMIC_MOVE);
+            log.info("Saved image {} to {}", image, tarball(image));
+        } catch (IOException e) {
+            throw new K8sClusterException(e);
+        }
+    }
+
+    /**
+     * @return id of the image in the containerd of the node, or null if not present
+     */
+    private String nodeImageId(String node, String image) {
+        try {
+            return exec("docker", "exec", node, "crictl", "inspecti", "--output", "go-template", "--template", "{{.status.id}}", image);
+        } catch (K8sClusterException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return names of the server and agent containers of the cluster
+     */
+    private List<String> nodes(String clusterName) {
+        String nodes = exec("docker", "ps", "--filter", "label=k3d.cluster="+ clusterName,
+                "--format", "{{.Names}} {{.Label \"k3d.role\"}}");
+        return Arrays.stream(nodes.split("\n"))
+                .map(line -> line.trim().split(" "))
+                .filter(node -> node.length == 2 && (node[1].equals("server") || node[1].equals("agent")))
+                .map(node -> node[0])
+                .collect(Collectors.toList());
+    }
+
+    private String exec(String command, String... args) {
+        List<String> argv = new ArrayList<>();
+        argv.add(command);
+        argv.addAll(Arrays.asList(args));
+        return exec.exec(argv);
+    }
+}
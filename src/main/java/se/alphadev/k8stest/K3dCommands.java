@@ -1,35 +1,83 @@
 package se.alphadev.k8stest;
 
 import static java.nio.file.Files.exists;
-import static java.util.concurrent.TimeUnit.SECONDS;
 import static se.alphadev.k8stest.K8sCluster.RESOURCES_DIR;
 import static se.alphadev.k8stest.Utils.copyToResourcesdDir;
 
 import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
 
 @Slf4j
 class K3dCommands {
 
-    private final String CLUSTER_NAME = "k3s-test-cluster";
+    /**
+     * Label of the node publishing the node ports, with the range of published ports
+     */
+    static final String NODE_PORTS_LABEL = "k8s-test.node-ports";
 
     private final String K3D_INSTALL_SCRIPT_LOCATION = "k3d-install-script/install.sh";
-    private final String K3D_EXEC = RESOURCES_DIR +"/k3d/k3d";
+    private final String K3D_EXEC;
+    private final Path tmpfsDir;
+
+    K3dCommands() {
+        this(RESOURCES_DIR +"/k3d/k3d");
+    }
 
+    /**
+     * @param k3dExec path of the k3d binary
+     */
+    K3dCommands(String k3dExec) {
+        this(k3dExec, Paths.get("/dev/shm", "k8s-test"));
+    }
 
+    /**
+     * @param k3dExec path of the k3d binary
+     * @param tmpfsDir dir in tmpfs for the k3s data dirs of clusters with the data dir in tmpfs
+     */
+    K3dCommands(String k3dExec, Path tmpfsDir) {
+        this.K3D_EXEC = k3dExec;
+        this.tmpfsDir = tmpfsDir;
+    }
+
+    /**
+     * @return true if the version of k3d is installed. Verified by the fingerprint of the binary when
+     * recorded, else by running k3d, recording the fingerprint if the version matches.
+     */
     protected boolean checkK3dInstalled(String version) {
-        return exists(Paths.get(K3D_EXEC))
-            && getVersion().equals(version);
+        return ClusterEvents.record("checkK3dVersion", "k3d", null, version, () -> isInstalled(version));
+    }
+
+    private boolean isInstalled(String version) {
+        if (!exists(Paths.get(K3D_EXEC)))
+            return false;
+        K3dFingerprint fingerprint = new K3dFingerprint(Paths.get(K3D_EXEC));
+        if (fingerprint.matches(version))
+            return true;
+        if (!getVersion().equals(version))
+            return false;
+        fingerprint.record(version);
+        return true;
     }
 
     /**
      * Install k3d into {user.home}/.k8s-test/k3d
      */
     void installK3d(String version) {
+        ClusterEvents.record("installK3d", "k3d", null, version, () -> install(version));
+    }
+
+    private void install(String version) {
         try {
             Files.createDirectories(Paths.get(RESOURCES_DIR + "/k3d"));
             Path k3dInstallScript = copyToResourcesdDir(
@@ -43,47 +91,162 @@ class K3dCommands {
                 "TAG", version,
                 "PATH", System.getenv("PATH") +":"+ RESOURCES_DIR + "/k3d");
 
-            Process process = ShellExec.run(k3dInstallScript.toAbsolutePath() +" --no-sudo", env);
-            if (!process.waitFor(45, SECONDS) || process.exitValue() != 0) {
-                throw new IllegalStateException("Unable to download and install k3d. See log for more info");
+            ShellExec.command(k3dInstallScript.toAbsolutePath().toString(), "--no-sudo")
+                .env(env)
+                .timeout(Duration.ofSeconds(45))
+                .verbose()
+                .run();
+            String installed = getVersion();
+            if (installed.equals(version)) {
+                new K3dFingerprint(Paths.get(K3D_EXEC)).record(version);
             }
-            log.info("k3d {} installed succesfully", getVersion());
-        } catch (Exception e) {
-            throw new K8sClusterException(e);
+            log.info("k3d {} installed succesfully", installed);
+        } catch (IOException | K8sClusterException e) {
+            throw new K8sClusterException("Unable to download and install k3d", e);
         }
     }
 
+    /**
+     * @return version of k3d, like v3.4.0, or an empty string if unknown
+     */
     protected String getVersion() {
-        return ShellExec.runAndGetOutput(K3D_EXEC + " --version | grep 'k3d version' | cut -d ' ' -f3");
+        ShellExec.Result result = ShellExec.command(K3D_EXEC, "--version").timeout(Duration.ofSeconds(10)).execute();
+        return parseVersion(result.getStdout());
     }
 
-    protected void createCluster() {
-        try {
-            log.info("Create local k3s cluster {}", LocalK3sCluster.CLUSTER_NAME);
+    static String parseVersion(String versionOutput) {
+        for (String line : versionOutput.split("\n")) {
+            if (line.startsWith("k3d version ")) {
+                return line.substring("k3d version ".length()).trim();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * @return true if k3d knows of the cluster, running or not
+     */
+    protected boolean clusterExists(String clusterName) {
+        ShellExec.Result result = ShellExec.command(K3D_EXEC, "cluster", "get", clusterName)
+                .timeout(Duration.ofSeconds(10))
+                .execute();
+        return result.getExitCode() == 0;
+    }
 
-            Path k3sRegistriesFile = copyToResourcesdDir(
-                "k3s-registries.yaml",
-                "/k3s-registries.yaml").toAbsolutePath();
+    /**
+     * @return range of node ports published by the cluster, as labeled when created, or null if not labeled
+     */
+    protected String publishedNodePorts(String clusterName) {
+        ShellExec.Result result = ShellExec.command("docker", "ps", "--all",
+                    "--filter", "label=k3d.cluster="+ clusterName, "--filter", "label="+ NODE_PORTS_LABEL,
+                    "--format", "{{.Label \""+ NODE_PORTS_LABEL +"\"}}")
+                .timeout(Duration.ofSeconds(10))
+                .execute();
+        if (result.getExitCode() != 0)
+            return null;
+        return Arrays.stream(result.getStdout().split("\n"))
+                .map(String::trim)
+                .filter(range -> !range.isEmpty())
+                .findFirst().orElse(null);
+    }
 
-            Process process = ShellExec.run(K3D_EXEC +
-                " cluster create " + CLUSTER_NAME +
-                " --agents 1 "+ publishPorts() +
-                " --volume "+ k3sRegistriesFile +":/etc/rancher/k3s/registries.yaml"
-            );
+    protected void startCluster(String clusterName) {
+        log.info("Start local k3s cluster {}", clusterName);
+        ClusterEvents.record("startCluster", "k3d", null, clusterName, () -> ShellExec.command(K3D_EXEC, "cluster", "start", clusterName)
+                .timeout(Duration.ofSeconds(30))
+                .verbose()
+                .run());
+    }
+
+    /**
+     * Create the cluster, shaped by the profile, publishing node ports {@code firstNodePort} to
+     * {@code firstNodePort + nodePorts - 1} on the first agent, or the server when there are no agents.
+     */
+    protected void createCluster(String clusterName, ClusterProfile profile, int firstNodePort, int nodePorts) {
+        log.info("Create local k3s cluster {}, {}", clusterName, profile);
+
+        Path k3sRegistriesFile = copyToResourcesdDir(
+            "k3s-registries.yaml",
+            "/k3s-registries.yaml").toAbsolutePath();
+
+        ClusterEvents.record("createCluster", "k3d", null, clusterName, () -> ShellExec.command(createClusterArgs(clusterName, profile, firstNodePort, nodePorts, k3sRegistriesFile))
+            .timeout(profile.getTimeout().plusSeconds(30))
+            .verbose()
+            .run());
+    }
 
-            if (!process.waitFor(30, SECONDS) || process.exitValue() != 0) {
-                throw new K8sClusterException("Unable to create k3s cluster. See log for more info");
+    List<String> createClusterArgs(String clusterName, ClusterProfile profile, int firstNodePort, int nodePorts, Path k3sRegistriesFile) {
+        List<String> args = new ArrayList<>(Arrays.asList(K3D_EXEC, "cluster", "create", clusterName,
+                "--servers", String.valueOf(profile.getServers()),
+                "--agents", String.valueOf(profile.getAgents())));
+
+        String portNode = profile.getAgents() > 0 ? "agent[0]" : "server[0]";
+        args.add("--port");
+        args.add(String.format("%1$d-%2$d:%1$d-%2$d@%3$s", firstNodePort, firstNodePort + nodePorts - 1, portNode));
+        args.add("--label");
+        args.add(NODE_PORTS_LABEL +"="+ NodePortAllocator.range(firstNodePort, nodePorts) +"@"+ portNode);
+        args.add("--volume");
+        args.add(k3sRegistriesFile +":/etc/rancher/k3s/registries.yaml");
+
+        for (String component : profile.getDisabledComponents()) {
+            args.add("--k3s-server-arg");
+            args.add("--disable="+ component);
+        }
+        if (profile.isTmpfsDataDir()) {
+            Path dataDir = tmpfsDataDir(clusterName);
+            if (dataDir != null) {
+                args.add("--volume");
+                args.add(dataDir +":/var/lib/rancher/k3s@server[0]");
             }
-        } catch (InterruptedException e) {
+        }
+        args.add("--wait="+ profile.isWaitForReady());
+        args.add("--timeout");
+        args.add(profile.getTimeout().getSeconds() +"s");
+        return args;
+    }
+
+    /**
+     * @return empty dir in tmpfs for the k3s data of the server, or null if there is no tmpfs. A cluster created again
+     * must not start on the certificates and datastore of the deleted cluster, so if the data dir of a deleted cluster
+     * can't be wiped, like when owned by root, a new dir is used.
+     */
+    private Path tmpfsDataDir(String clusterName) {
+        if (!Files.isDirectory(tmpfsDir.getParent())) {
+            log.warn("No {}, k3s data dir is not kept in tmpfs", tmpfsDir.getParent());
+            return null;
+        }
+        Path dataDir = tmpfsDir.resolve(clusterName);
+        if (!deleteTmpfsDataDir(clusterName)) {
+            dataDir = tmpfsDir.resolve(clusterName +"."+ System.currentTimeMillis());
+            log.warn("Unable to wipe k3s data dir of {}, use {}", clusterName, dataDir);
+        }
+        try {
+            return Files.createDirectories(dataDir);
+        } catch (IOException e) {
             throw new K8sClusterException(e);
         }
     }
 
-    private String publishPorts() {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 1; i <= 20; i++) {
-            sb.append(String.format(" --port 310%1$02d:310%1$02d@agent[0] ", i));
+    /**
+     * Delete the k3s data dirs in tmpfs of the cluster, if any.
+     * @return true if the data dir of the cluster is gone
+     */
+    boolean deleteTmpfsDataDir(String clusterName) {
+        if (!Files.isDirectory(tmpfsDir))
+            return true;
+        try (DirectoryStream<Path> dataDirs = Files.newDirectoryStream(tmpfsDir,
+                dir -> dir.getFileName().toString().equals(clusterName) || dir.getFileName().toString().startsWith(clusterName +"."))) {
+            for (Path dataDir : dataDirs) {
+                try {
+                    FileUtils.deleteDirectory(dataDir.toFile());
+                    log.info("Deleted k3s data dir {}", dataDir);
+                } catch (IOException e) {
+                    log.warn("Unable to delete k3s data dir {}, {}", dataDir, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to list k3s data dirs in {}, {}", tmpfsDir, e.getMessage());
         }
-        return sb.toString();
+        return !Files.exists(tmpfsDir.resolve(clusterName));
     }
 }
@@ -0,0 +1,77 @@
+package se.alphadev.k8stest;
+
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Version, size, modification time and checksum of an installed k3d binary, stored next to the binary,
+ * so an installed version is verified by reading file attributes instead of running k3d.
+ */
+@Slf4j
+class K3dFingerprint {
+
+    private final Path binary;
+    private final Path file;
+
+    K3dFingerprint(Path binary) {
+        this.binary = binary;
+        this.file = binary.resolveSibling(binary.getFileName() +".fingerprint");
+    }
+
+    /**
+     * @return true if the binary has the size and modification time recorded with the version.
+     * A binary with the recorded size and checksum, but another modification time, also matches.
+     */
+    boolean matches(String version) {
+        if (!Files.exists(file) || !Files.exists(binary))
+            return false;
+        try {
+            Properties recorded = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                recorded.load(in);
+            }
+            BasicFileAttributes attributes = Files.readAttributes(binary, BasicFileAttributes.class);
+            if (!version.equals(recorded.getProperty("version"))
+                    || !String.valueOf(attributes.size()).equals(recorded.getProperty("size")))
+                return false;
+            if (String.valueOf(attributes.lastModifiedTime().toMillis()).equals(recorded.getProperty("mtime")))
+                return true;
+            if (sha256().equals(recorded.getProperty("sha256"))) {
+                record(version);
+                return true;
+            }
+            return false;
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Unable to read k3d fingerprint {}", file, e);
+            return false;
+        }
+    }
+
+    void record(String version) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(binary, BasicFileAttributes.class);
+            Properties fingerprint = new Properties();
+            fingerprint.setProperty("version", version);
+            fingerprint.setProperty("size", String.valueOf(attributes.size()));
+            fingerprint.setProperty("mtime", String.valueOf(attributes.lastModifiedTime().toMillis()));
+            fingerprint.setProperty("sha256", sha256());
+            try (OutputStream out = Files.newOutputStream(file)) {
+                fingerprint.store(out, "k3d binary " + binary);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to write k3d fingerprint {}", file, e);
+        }
+    }
+
+    @SuppressWarnings("UnstableApiUsage")
+    private String sha256() throws IOException {
+        return com.google.common.io.Files.asByteSource(binary.toFile()).hash(Hashing.sha256()).toString();
+    }
+}
@@ -1,8 +1,8 @@
 package se.alphadev.k8stest;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.createDirectories;
 import static java.nio.file.Files.walk;
-import static org.awaitility.Awaitility.await;
 
 import com.google.common.collect.ImmutableMap;
 import io.fabric8.kubernetes.api.model.ConfigMap;
@@ -10,48 +10,118 @@ import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
 import io.fabric8.kubernetes.api.model.EnvVarBuilder;
 import io.fabric8.kubernetes.api.model.HasMetadata;
 import io.fabric8.kubernetes.api.model.IntOrString;
-import io.fabric8.kubernetes.api.model.KubernetesListBuilder;
 import io.fabric8.kubernetes.api.model.Namespace;
 import io.fabric8.kubernetes.api.model.NamespaceBuilder;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodBuilder;
 import io.fabric8.kubernetes.api.model.Service;
 import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.api.model.ServicePort;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
 import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.utils.HttpClientUtils;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
 
 @Slf4j
 public abstract class K8sCluster {
 
     final static String RESOURCES_DIR = System.getProperty("user.home") +"/.k8s-test";
 
-    private String namespace;
+    private final String configuredNamespace;
+    private volatile String namespace;
     private boolean failOnExistingTestNamespace;
-    private KubernetesClient client;
+    private int namespacePoolSize;
+    private final ExecutorService executor;
+    private final Duration readinessTimeout;
+    private final int maxInFlightApplies;
+    private final boolean idempotentApply;
+    private final boolean keepNamespace;
+    private final boolean resetExistingTestNamespace;
+    private final int nodePortCount;
+    private final int maxConcurrentRequests;
+    private final int maxConcurrentRequestsPerHost;
+    private final boolean http2;
+    private final int maxIdleConnections;
+    private final Duration keepAlive;
+    private volatile KubernetesClient client;
+    private boolean sharedConnection;
+    private NamespacePool namespacePool;
+    private NamespacePool leasedFrom;
+    private NodePortAllocator nodePortAllocator;
+    private NodePortAllocator nodePortsFrom;
+    private final Set<Integer> leasedNodePorts = new HashSet<>();
+    private volatile ResourceCache cache;
+    private volatile ReadinessEngine readiness;
+    private volatile PodStartupProfiler podStartupProfiler;
+    private volatile Runnable lazySetup;
+    private volatile RuntimeException lazySetupFailure;
+    private volatile boolean namespaceSetUp;
+    private final Path recordingFile;
+    private final ClusterRecording recording;
+    private final Path apiMetricsDir;
+    private ApiMetrics apiMetrics;
 
     protected K8sCluster(String namespace, boolean failOnExistingTestNamespace) {
-        this.namespace = namespace;
-        this.failOnExistingTestNamespace = failOnExistingTestNamespace;
+        this(builder().testNamespace(namespace).failOnExistingTestNamespace(failOnExistingTestNamespace));
+    }
+
+    protected K8sCluster(K8sClusterBuilder builder) {
+        this.configuredNamespace = builder.uniqueNamespace
+                ? builder.namespace +"-"+ UUID.randomUUID().toString().substring(0, 5)
+                : builder.namespace;
+        this.namespace = configuredNamespace;
+        this.failOnExistingTestNamespace = builder.failOnExistingTestNamespace && !builder.idempotentApply;
+        this.namespacePoolSize = builder.namespacePoolSize;
+        this.executor = builder.executor != null ? builder.executor : K8sExecutors.defaultExecutor();
+        this.readinessTimeout = builder.readinessTimeout;
+        this.maxInFlightApplies = builder.maxInFlightApplies;
+        this.idempotentApply = builder.idempotentApply;
+        this.keepNamespace = builder.idempotentApply && !builder.uniqueNamespace;
+        this.resetExistingTestNamespace = builder.resetExistingTestNamespace;
+        this.nodePortCount = builder.nodePortCount;
+        this.maxConcurrentRequests = builder.maxConcurrentRequests;
+        this.maxConcurrentRequestsPerHost = builder.maxConcurrentRequestsPerHost;
+        this.http2 = builder.http2;
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAlive = builder.keepAlive;
+        this.apiMetricsDir = builder.apiMetricsDir;
+        this.apiMetrics = apiMetricsDir != null ? new ApiMetrics() : null;
+        this.recordingFile = builder.recordingFile;
+        this.recording = recordingFile != null ? ClusterRecording.of(recordingFile, () -> namespace) : null;
     }
 
     KubernetesClient client() {
+        setupIfLazy();
         if (client == null)
             throw new K8sClusterException("Cluster not setup. Call setup() before getting client.");
         return client;
@@ -63,15 +133,150 @@ public abstract class K8sCluster {
      * @return connected client
      * @throws Exception
      */
-    public final K8sCluster setup() {
-        createResourcesDir();
-        this.client = doConnect();
-        setupTestNamespace();
+    public final synchronized K8sCluster setup() {
+        lazySetup = null;
+        connect();
+        setupTestNamespace(this);
         logClusterInfo();
 //        logEvents();
         return this;
     }
 
+    /**
+     * Set up the test namespace using the client of an already connected cluster,
+     * instead of connecting this cluster on its own.
+     * @param connected cluster handle whose connection will be reused
+     * @return this cluster
+     * @throws K8sClusterException if either cluster records, as a recording is of one test class
+     */
+    public final synchronized K8sCluster setup(K8sCluster connected) {
+        if (recording != null || connected.recording != null)
+            throw new K8sClusterException("Recording is per test class, and not supported with a shared connection. "
+                    + "Remove recording(...) from the cluster, or shareCluster from the test class.");
+        lazySetup = null;
+        if (connected != this) {
+            this.client = connected.connect().client();
+            this.sharedConnection = true;
+            if (connected.apiMetrics != null) {
+                this.apiMetrics = connected.apiMetrics;
+            }
+        }
+        setupTestNamespace(connected);
+        logClusterInfo();
+        return this;
+    }
+
+    /**
+     * Connect to, (or create) a k8s cluster, without touching the test namespace.
+     * Does nothing if already connected.
+     * @return this cluster
+     */
+    public final synchronized K8sCluster connect() {
+        if (client == null) {
+            createResourcesDir();
+            this.client = ClusterEvents.record("connect", "Cluster", null, clusterKey(),
+                    () -> recording != null && recording.isReplay() ? newClient(recording.replayConfig()) : doConnect());
+            log.info("connected to cluster {}", client.getMasterUrl());
+            nodePortAllocator = new NodePortAllocator(firstNodePort(), nodePortCount());
+            markNodePortsInUse(nodePortAllocator);
+            if (namespacePoolSize > 0) {
+                namespacePool = new NamespacePool(this, configuredNamespace, namespacePoolSize).start();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Close the client of this cluster. A client shared from another cluster is left open.
+     */
+    public synchronized void disconnect() {
+        if (namespacePool != null) {
+            namespacePool.close();
+            namespacePool = null;
+        }
+        if (client != null && !sharedConnection) {
+            log.info("Disconnect from cluster {}", client.getMasterUrl());
+            client.close();
+            if (recording != null) {
+                recording.close();
+            }
+            doDisconnect();
+        }
+        client = null;
+    }
+
+    /**
+     * Release resources held for the connection, after the client is closed.
+     */
+    protected void doDisconnect() {
+    }
+
+    /**
+     * @return key identifying the cluster this handle connects to.
+     * Handles with equal keys can share a connection.
+     */
+    public abstract String clusterKey();
+
+    /**
+     * @return true if the other handle connects to the same cluster with the same settings, like namespace pool,
+     * client tuning, API metrics and recording, so this handle can use the connection of the other as its own
+     */
+    public boolean hasConnectionSettingsOf(K8sCluster other) {
+        return connectionSettings().equals(other.connectionSettings());
+    }
+
+    /**
+     * @return settings used when connecting, and by the connection. Subclasses add settings of their own.
+     */
+    protected List<Object> connectionSettings() {
+        return new ArrayList<>(Arrays.asList(getClass(), clusterKey(), namespacePoolSize, nodePortCount,
+                maxConcurrentRequests, maxConcurrentRequestsPerHost, http2, maxIdleConnections, keepAlive,
+                apiMetricsDir, recordingFile));
+    }
+
+    /**
+     * @return the test namespace. When a namespace pool is used, this is the pooled namespace
+     * handed out on setup.
+     */
+    public String namespace() {
+        setupIfLazy();
+        return namespace;
+    }
+
+    /**
+     * Defer set up until the cluster is first used, like creating or reading resources.
+     * Tear down does nothing if the cluster was never used. Does nothing if the cluster is already set up.
+     * @param setup sets up this cluster, like {@code cluster::setup}
+     * @return this cluster
+     */
+    public synchronized K8sCluster setupLazily(Runnable setup) {
+        if (namespaceSetUp)
+            return this;
+        lazySetup = setup;
+        lazySetupFailure = null;
+        return this;
+    }
+
+    private void setupIfLazy() {
+        if (lazySetup == null && lazySetupFailure == null)
+            return;
+        synchronized (this) {
+            if (lazySetupFailure != null)
+                throw new K8sClusterException("Lazy set up of cluster failed", lazySetupFailure);
+            Runnable setup = lazySetup;
+            if (setup == null)
+                return;
+            lazySetup = null;
+            log.info("Set up cluster on first use");
+            try {
+                setup.run();
+            } catch (RuntimeException e) {
+                lazySetupFailure = e;
+                throw e;
+            }
+        }
+    }
+
     protected void createResourcesDir() {
         try {
             createDirectories(Paths.get(RESOURCES_DIR));
@@ -82,10 +287,78 @@ public abstract class K8sCluster {
 
     protected abstract KubernetesClient doConnect();
 
+    /**
+     * @return number of node ports, from {@link #firstNodePort()}, handed out by {@link #leaseNodePort()}
+     */
+    int nodePortCount() {
+        return nodePortCount;
+    }
 
-    private void setupTestNamespace() {
-        createTestNamespace();
-        createEnvConfigMap();
+    ExecutorService executor() {
+        return executor;
+    }
+
+    int firstNodePort() {
+        return NodePortAllocator.FIRST_NODE_PORT;
+    }
+
+    private void markNodePortsInUse(NodePortAllocator allocator) {
+        try {
+            allocator.setInUse(client.services().inAnyNamespace().list().getItems().stream()
+                    .flatMap(s -> s.getSpec().getPorts().stream())
+                    .map(ServicePort::getNodePort)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()));
+        } catch (KubernetesClientException e) {
+            log.info("Unable to list node ports in use, {}", e.getMessage());
+        }
+    }
+
+    private void setupTestNamespace(K8sCluster connection) {
+        if (namespacePoolSize > 0 && connection.namespacePool != null) {
+            leasedFrom = connection.namespacePool;
+            namespace = leasedFrom.acquire();
+            log.info("Using pooled test namespace {}", namespace);
+        } else {
+            createTestNamespace();
+            createEnvConfigMap(namespace);
+        }
+        nodePortsFrom = connection.nodePortAllocator;
+        closeCache();
+        cache = new ResourceCache(client(), namespace);
+        podStartupProfiler = new PodStartupProfiler(cache);
+        readiness = new ReadinessEngine(client(), cache, namespace, executor, podStartupProfiler);
+        namespaceSetUp = true;
+    }
+
+    private ResourceCache cache() {
+        setupIfLazy();
+        if (cache == null)
+            throw new K8sClusterException("Cluster not setup. Call setup() before reading resources.");
+        return cache;
+    }
+
+    /**
+     * @return startup timelines of the pods in the test namespace: created, scheduled, image pulled, started and ready
+     */
+    public List<PodStartup> podStartups() {
+        return podStartupProfiler().all();
+    }
+
+    public Optional<PodStartup> podStartup(String podName) {
+        return podStartupProfiler().of(podName);
+    }
+
+    private PodStartupProfiler podStartupProfiler() {
+        cache();
+        return podStartupProfiler;
+    }
+
+    private ReadinessEngine readiness() {
+        setupIfLazy();
+        if (readiness == null)
+            throw new K8sClusterException("Cluster not setup. Call setup() before creating resources.");
+        return readiness;
     }
 
     private void createTestNamespace() {
@@ -93,34 +366,113 @@ public abstract class K8sCluster {
         if (testNamespace != null && failOnExistingTestNamespace) {
             throw new K8sClusterException("There already exist a test namespace in the cluster: "+ testNamespace +". Delete or set 'k8s-test.fail-on-existing-test-namespace=false'");
         }
+        if (testNamespace != null && idempotentApply && "Active".equals(testNamespace.getStatus().getPhase())) {
+            log.info("Found existing test namespace {}, will reuse it.", namespace);
+            return;
+        }
+        if (testNamespace != null && resetExistingTestNamespace && "Active".equals(testNamespace.getStatus().getPhase())) {
+            log.info("Found existing test namespace {}, will reset it.", namespace);
+            new NamespaceReset(client(), namespace, executor).reset(60);
+            return;
+        }
         if (testNamespace != null) {
             log.info("Found existing test namespace {}, will delete it.", testNamespace.getStatus());
             deleteNamespaceAndWait(60, namespace);
         }
-        createTestNamespaceAndWait(30, namespace);
+        createTestNamespaceAndWait(30, namespace, ImmutableMap.of());
     }
 
-    private void createEnvConfigMap() {
-        ConfigMap configMap = client().configMaps().inNamespace(namespace).withName("cluster-config").create(
-                new ConfigMapBuilder()
-                    .withNewMetadata().withName("cluster-config").endMetadata()
-                    .addToData("cluster-name", "e2e").build());
+    void createEnvConfigMap(String namespace) {
+        ConfigMap configMap = ClusterEvents.record("createConfigMap", "ConfigMap", namespace, "cluster-config",
+                () -> client().configMaps().inNamespace(namespace).withName("cluster-config").createOrReplace(
+                        new ConfigMapBuilder()
+                            .withNewMetadata().withName("cluster-config").endMetadata()
+                            .addToData("cluster-name", "e2e").build()));
         log.info("Created environment configmap: {}, data: {}", configMap.getMetadata().getName(), configMap.getData());
     }
 
-    public void tearDown() {
-        deleteNamespaceNoWait(namespace);
+    public synchronized void tearDown() {
+        if (lazySetup != null || lazySetupFailure != null) {
+            log.info("Cluster never used, skip tear down");
+            lazySetup = null;
+            lazySetupFailure = null;
+            return;
+        }
+        String tornDown = namespace;
+        ClusterEvents.record("tearDown", "Namespace", tornDown, tornDown, this::tearDownNamespace);
+        if (apiMetricsDir != null && apiMetrics != null) {
+            apiMetrics.write(apiMetricsDir.resolve(tornDown +".json"), apiMetrics.snapshotAndReset(tornDown));
+        }
+        doTearDown();
+    }
+
+    /**
+     * @return true if the requests of this cluster are recorded or replayed
+     */
+    public boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * @return metrics of the API requests of the client, shared by the clusters sharing the connection
+     */
+    public ApiMetrics apiMetrics() {
+        if (apiMetrics == null)
+            throw new K8sClusterException("API metrics are not enabled. Enable with apiMetrics() on the builder.");
+        return apiMetrics;
+    }
+
+    private void tearDownNamespace() {
+        namespaceSetUp = false;
+        closeCache();
+        if (nodePortsFrom != null) {
+            leasedNodePorts.forEach(nodePortsFrom::release);
+            leasedNodePorts.clear();
+            nodePortsFrom = null;
+        }
+        if (leasedFrom != null) {
+            leasedFrom.release(namespace);
+            leasedFrom = null;
+            namespace = configuredNamespace;
+        } else if (keepNamespace) {
+            log.info("Keep test namespace {} for the next run", namespace);
+        } else {
+            deleteNamespaceNoWait(namespace);
+        }
+    }
+
+    /**
+     * Stop waiting for readiness, and the informers of the test namespace.
+     */
+    private void closeCache() {
+        if (readiness != null) {
+            readiness.close();
+            readiness = null;
+        }
+        if (cache != null) {
+            cache.close();
+            cache = null;
+            podStartupProfiler = null;
+        }
+    }
+
+    /**
+     * Release resources held for the test namespace, after it is torn down.
+     */
+    protected void doTearDown() {
     }
 
     private void logClusterInfo() {
-        log.info("connected to cluster {}", client().getMasterUrl());
         log.info("namespace {}", namespace);
         log.info("deployments: {}", deployments());
         log.info("images: {}", images());
     }
 
+    /**
+     * @return names of the deployments in the test namespace
+     */
     public List<String> deployments() {
-        return client().apps().deployments().inAnyNamespace().list().getItems()
+        return cache().list(Deployment.class)
                 .stream().map(d -> d.getMetadata().getName())
                 .collect(Collectors.toList());
     }
@@ -147,49 +499,70 @@ public abstract class K8sCluster {
     }
 
     List<Pod> pods() {
-        return client().pods().inNamespace(namespace).list().getItems();
+        return cache().list(Pod.class);
+    }
+
+    /**
+     * @return pods in the test namespace labelled with the given app
+     */
+    List<Pod> pods(String app) {
+        return cache().byApp(Pod.class, app);
     }
 
-//    public void waitUntilAllPodsInNamespaceAreReady(int timeoutInSeconds) {
-//
-//        await().atMost(5, TimeUnit.SECONDS)
-//            .until(() -> pods().size() > 0);
-//
-//
-//        log.info("Wating {} seconds for pods in namespace {} to be ready", timeoutInSeconds, namespace);
-//        await().atMost(timeoutInSeconds, TimeUnit.SECONDS)
-//            .ignoreException(K8sClusterException.class)
-//            .until(() -> pods().parallelStream().map(p -> waitUntilReady(1, p) != null).allMatch(isReady -> true));
-//    }
+    List<Service> services() {
+        return cache().list(Service.class);
+    }
 
-//    public HasMetadata waitUntilReady(int timeoutInSeconds, HasMetadata resources) {
-//        waitUntilReady(timeoutInSeconds, resources);
-//        return resources;
-//    }
+    List<ConfigMap> configMaps() {
+        return cache().list(ConfigMap.class);
+    }
+
+    /**
+     * Wait until there is at least one pod in the test namespace, and all pods are ready.
+     */
+    public void waitUntilAllPodsInNamespaceAreReady(int timeoutInSeconds) {
+        log.info("Wating {} seconds for pods in namespace {} to be ready", timeoutInSeconds, namespace);
+        try {
+            readiness().whenAllPodsReady(timeoutInSeconds, TimeUnit.SECONDS).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new K8sClusterException(e);
+        }
+    }
 
-    private Namespace createTestNamespaceAndWait(int timeoutInSeconds, String name) {
+    Namespace createTestNamespaceAndWait(int timeoutInSeconds, String name, Map<String, String> labels) {
 
         log.info("Create namespace {}", name);
         Namespace namespace = new NamespaceBuilder()
                 .withNewMetadata()
                     .withName(name)
                     .withLabels(ImmutableMap.of("is-test-namespace", "true"))
+                    .addToLabels(labels)
                 .endMetadata()
                 .build();
-        namespace = client().namespaces().withName(name).createOrReplace(namespace);
-
-        await().atMost(Duration.of(timeoutInSeconds, ChronoUnit.SECONDS)).ignoreExceptions()
-            .until(() -> client().namespaces().withName(name).get() != null);
 
         //TODO: namespace is stuck in terminating until metrics server comes online
 //        namespace = client().namespaces().withName(name).edit().editSpec().withFinalizers(new ArrayList<>()).endSpec().done();
-        return namespace;
+        return ClusterEvents.record("createNamespace", "Namespace", name, name, () -> {
+            createNamespace(namespace);
+            try {
+                return client().namespaces().withName(name).waitUntilCondition(
+                        n -> n != null && "Active".equals(n.getStatus().getPhase()),
+                        timeoutInSeconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new K8sClusterException(e);
+            }
+        });
     }
 
-    private void deleteNamespaceNoWait(String namespace) {
+    protected Namespace createNamespace(Namespace namespace) {
+        return client().namespaces().withName(namespace.getMetadata().getName()).createOrReplace(namespace);
+    }
+
+    void deleteNamespaceNoWait(String namespace) {
         log.info("Delete namespace {}", namespace);
         try {
-            client().namespaces().withName(namespace).cascading(true).withGracePeriod(0).delete();
+            ClusterEvents.record("deleteNamespace", "Namespace", namespace, namespace,
+                    () -> client().namespaces().withName(namespace).cascading(true).withGracePeriod(0).delete());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -197,15 +570,14 @@ public abstract class K8sCluster {
 
     private void deleteNamespaceAndWait(int timeoutInSeconds, String namespace) {
         log.info("Delete namespace {}", namespace);
-        await().atMost(Duration.of(timeoutInSeconds, ChronoUnit.SECONDS))
-            .until(() -> {
-                try {
-                    Boolean deleteStatus = client().namespaces().withName(namespace).cascading(true).withGracePeriod(0).delete();
-                    return deleteStatus == null? true: !deleteStatus;
-                } catch (KubernetesClientException e) {
-                    return false;
-                }
-            });
+        ClusterEvents.record("deleteNamespaceAndWait", "Namespace", namespace, namespace, () -> {
+            try {
+                client().namespaces().withName(namespace).cascading(true).withGracePeriod(0).delete();
+                return client().namespaces().withName(namespace).waitUntilCondition(Objects::isNull, timeoutInSeconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new K8sClusterException(e);
+            }
+        });
     }
 
     public CompletableFuture<Pod> createPod(String name, String image) {
@@ -228,7 +600,7 @@ public abstract class K8sCluster {
 
         log.info("Create pod {}, image {}", name, image);
         Pod pod = new PodBuilder()
-                .withNewMetadata().withName(name).addToLabels("app", name).endMetadata()
+                .withNewMetadata().withName(name).withNamespace(namespace).addToLabels("app", name).endMetadata()
                 .withNewSpec()
                     .addNewContainer()
                         .withName(name)
@@ -238,20 +610,18 @@ public abstract class K8sCluster {
                 .endSpec()
                 .build();
 
-          client().pods().inNamespace(namespace).createOrReplace(pod);
+          return ClusterEvents.recordAsync("createPod", "Pod", namespace, name, () -> {
+              Pod applied = createOrReplace(pod);
 
-          log.info("Wait until pod {} are ready", name);
-          return CompletableFuture.supplyAsync(() -> {
-                    try {
-                        return client().pods().inNamespace(namespace).withName(name).waitUntilReady(60, TimeUnit.SECONDS);
-                    } catch (InterruptedException e) {throw new K8sClusterException(e);}
-                });
+              log.info("Wait until pod {} are ready", name);
+              return readiness().whenReady(applied, readinessTimeout.toMillis(), TimeUnit.MILLISECONDS);
+          });
     }
 
     public CompletableFuture<Deployment> createDeployment(String name, String image) {
             log.info("createDeployment. name: {}, image: {}", name, image);
             Deployment deployment = new DeploymentBuilder()
-                    .withNewMetadata().withName(name).endMetadata()
+                    .withNewMetadata().withName(name).withNamespace(namespace).endMetadata()
                     .withNewSpec()
                         .withReplicas(1)
                         .withNewSelector().addToMatchLabels("app", name).endSelector()
@@ -275,13 +645,11 @@ public abstract class K8sCluster {
                         .endContainer()
                     .endSpec().endTemplate().endSpec().build();
 
-            client().apps().deployments().inNamespace(namespace).createOrReplace(deployment);
+            return ClusterEvents.recordAsync("createDeployment", "Deployment", namespace, name, () -> {
+                Deployment applied = createOrReplace(deployment);
 
-            log.info("Wait until deployment {} are ready", name);
-            return CompletableFuture.supplyAsync(() -> {
-                try {
-                    return client().apps().deployments().inNamespace(namespace).withName(name).waitUntilReady(60, TimeUnit.SECONDS);
-                } catch (InterruptedException e) {throw new K8sClusterException(e);}
+                log.info("Wait until deployment {} are ready", name);
+                return readiness().whenReady(applied, readinessTimeout.toMillis(), TimeUnit.MILLISECONDS);
             });
     }
 
@@ -292,7 +660,7 @@ public abstract class K8sCluster {
     public Service createService(String forApp, int port, int targetPort, Integer nodePort) {
         log.info("createService. name: {}, port: {}, targetPort: {}, nodePort", forApp, port, targetPort, nodePort);
         Service service = new ServiceBuilder()
-                .withNewMetadata().withName(forApp +"-svc").endMetadata()
+                .withNewMetadata().withName(forApp +"-svc").withNamespace(namespace).endMetadata()
                 .withNewSpec()
                     .withSelector(ImmutableMap.of("app", forApp))
                     .addNewPort()
@@ -306,46 +674,139 @@ public abstract class K8sCluster {
                 .endSpec()
                 .build();
 
-        return client().services().inNamespace(namespace).createOrReplace(service);
+        return ClusterEvents.record("createService", "Service", namespace, service.getMetadata().getName(), () -> createOrReplace(service));
+    }
+
+    /**
+     * Create a NodePort service, with a node port leased from the ports published by the cluster.
+     * The node port is released on tear down.
+     */
+    public Service createNodePortService(String forApp, int port, int targetPort) {
+        for (int attempt = 0; attempt < nodePortCount(); attempt++) {
+            int nodePort = leaseNodePort();
+            try {
+                return createService(forApp, port, targetPort, nodePort);
+            } catch (KubernetesClientException e) {
+                if (!isNodePortAllocated(e))
+                    throw e;
+                log.info("Node port {} is already allocated, lease another", nodePort);
+                nodePortsFrom.markInUse(nodePort);
+                releaseNodePort(nodePort);
+            }
+        }
+        throw new K8sClusterException("Unable to allocate a free node port for "+ forApp);
+    }
+
+    /**
+     * Lease a node port, not leased by other tests using the same connection, and not in use
+     * when the cluster was connected. The port is released on tear down.
+     */
+    public synchronized int leaseNodePort() {
+        setupIfLazy();
+        if (nodePortsFrom == null)
+            throw new K8sClusterException("Cluster not setup. Call setup() before leasing node ports.");
+        int nodePort = nodePortsFrom.lease();
+        leasedNodePorts.add(nodePort);
+        return nodePort;
+    }
+
+    public synchronized void releaseNodePort(int nodePort) {
+        if (leasedNodePorts.remove(nodePort)) {
+            nodePortsFrom.release(nodePort);
+        }
+    }
+
+    private static boolean isNodePortAllocated(KubernetesClientException e) {
+        return e.getCode() == 422 && e.getMessage() != null && e.getMessage().contains("already allocated");
     }
 
     public CompletableFuture<List<HasMetadata>> createFromSpecifications(Path dir, String name, String image, int nodePort) {
+        return createFromSpecifications(dir, variables(name, image, nodePort));
+    }
+
+    /**
+     * Create resources from the yaml files in a directory, replacing placeholders like {@code <name>} with variables.
+     * The {@code <namespace>} placeholder is replaced with the test namespace, unless given as a variable.
+     */
+    public CompletableFuture<List<HasMetadata>> createFromSpecifications(Path dir, Map<String, String> variables) {
+        return ClusterEvents.recordAsync("createFromSpecifications", "List", namespace, dir.toString(),
+                () -> applySpecifications(dir, variables));
+    }
+
+    private CompletableFuture<List<HasMetadata>> applySpecifications(Path dir, Map<String, String> variables) {
         log.info("create from path: {}", dir);
         try (Stream<Path> walk = walk(dir)) {
-           List<HasMetadata> hasMetadatas = walk.map(p -> p.toFile())
-                   .sorted().parallel()
+           List<HasMetadata> specifications = walk.map(p -> p.toFile())
+                   .sorted()
                    .filter(f -> f.isFile() && f.getName().matches(".*\\.ya?ml"))
-                   .flatMap(f -> createOrReplace(f, name, image, nodePort).stream())
+                   .flatMap(f -> load(f, variables).stream())
                    .collect(Collectors.toList());
+           List<HasMetadata> hasMetadatas = new BulkApply(this::createOrReplace, executor, maxInFlightApplies)
+                   .apply(specifications);
 
-           log.info("Wait until items {} are ready", name);
-           return CompletableFuture.supplyAsync(() -> {
-               try {
-                   return client().resourceList(new KubernetesListBuilder().withItems(hasMetadatas).build())
-                           .inNamespace(namespace)
-                           .waitUntilReady(60, TimeUnit.SECONDS);
-               } catch (InterruptedException e) {throw new K8sClusterException(e);}
-           });
+           log.info("Wait until items from {} are ready", dir);
+           return readiness().whenAllReady(hasMetadatas, readinessTimeout.toMillis(), TimeUnit.MILLISECONDS);
         } catch (IOException e) {
             throw new K8sClusterException(e);
         }
     }
 
     protected List<HasMetadata> createOrReplace(File f, String name, String image, int nodePort) {
-        try {
-            String spec = new String(Files.readAllBytes(f.toPath()));
-            //String spec = Files.readString(f.toPath());
-            spec = spec.replace("<name>", name)
-                    .replace("<namespace>", namespace)
-                    .replace("<image>", image)
-                    .replace("<nodeport>", ""+nodePort);
-
-            return client().load(new ByteArrayInputStream(spec.getBytes())).get().stream()
-                    .map(h -> client().resource(h).createOrReplace() )
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new K8sClusterException(e);
+        return load(f, variables(name, image, nodePort)).stream()
+                .map(this::createOrReplace)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Create or replace the resource. With idempotent apply, the resource is stamped with a hash of its spec,
+     * and not replaced if the live resource is stamped with the same hash. The live resource is read from the
+     * server, as the cache may be behind it, like right after a delete, a reset or an apply by another handle.
+     */
+    protected <T extends HasMetadata> T createOrReplace(T resource) {
+        if (idempotentApply) {
+            String hash = SpecHash.of(resource);
+            T live = client().resource(resource).fromServer().get();
+            if (SpecHash.isStamped(live, hash)) {
+                log.info("{} {} is unchanged, skip apply", resource.getKind(), resource.getMetadata().getName());
+                return live;
+            }
+            SpecHash.stamp(resource, hash);
+        }
+        return client().resource(resource).createOrReplace();
+    }
+
+    private List<HasMetadata> load(File f, Map<String, String> variables) {
+        Map<String, String> withNamespace = new HashMap<>(variables);
+        withNamespace.putIfAbsent("namespace", namespace);
+        String spec = ManifestTemplate.of(f.toPath()).render(withNamespace);
+        return client().load(new ByteArrayInputStream(spec.getBytes(UTF_8))).get();
+    }
+
+    private static Map<String, String> variables(String name, String image, int nodePort) {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("name", name);
+        variables.put("image", image);
+        variables.put("nodeport", ""+ nodePort);
+        return variables;
+    }
+
+    /**
+     * @return client of the config, with the request concurrency, HTTP/2 and connection pool settings of this cluster.
+     * The client owns its dispatcher and connection pool, released when the client is closed.
+     */
+    protected KubernetesClient newClient(Config config) {
+        config.setMaxConcurrentRequests(maxConcurrentRequests);
+        config.setMaxConcurrentRequestsPerHost(maxConcurrentRequestsPerHost);
+        config.setHttp2Disable(!http2);
+        OkHttpClient.Builder httpClient = HttpClientUtils.createHttpClient(config).newBuilder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS));
+        if (apiMetrics != null) {
+            httpClient.addInterceptor(apiMetrics.interceptor());
+        }
+        if (recording != null) {
+            httpClient.addInterceptor(recording.interceptor());
         }
+        return new DefaultKubernetesClient(httpClient.build(), config);
     }
 
     boolean isConnected(KubernetesClient client) {
@@ -363,9 +824,30 @@ public abstract class K8sCluster {
 
     public static class K8sClusterBuilder {
         private boolean local = true;
+        private boolean mock;
         private String namespace = "k8s-test";
         private boolean failOnExistingTestNamespace = true;
         private File configFile;
+        private int namespacePoolSize;
+        private ExecutorService executor;
+        private Duration readinessTimeout = Duration.ofSeconds(60);
+        private int maxInFlightApplies = 8;
+        private boolean idempotentApply;
+        private boolean resetExistingTestNamespace;
+        boolean keepClusterAlive = true;
+        private boolean uniqueNamespace;
+        private int nodePortCount = 20;
+        private int maxConcurrentRequests = 64;
+        private int maxConcurrentRequestsPerHost = 32;
+        private boolean http2 = true;
+        private int maxIdleConnections = 8;
+        private Duration keepAlive = Duration.ofMinutes(5);
+        int clusterPoolSize = 1;
+        ClusterProfile clusterProfile = ClusterProfile.defaults();
+        List<String> preloadImages = Collections.emptyList();
+        String shardKey;
+        private Path recordingFile;
+        private Path apiMetricsDir;
 
         public K8sClusterBuilder config(File configFile) {
             this.configFile = configFile;
@@ -373,21 +855,237 @@ public abstract class K8sCluster {
             return this;
         }
 
+        /**
+         * Use an in JVM mock server instead of a real cluster. Resources are stored but nothing runs,
+         * and workloads are reported ready when applied. Requires io.fabric8:kubernetes-server-mock on the classpath.
+         */
+        public K8sClusterBuilder mock() {
+            this.mock = true;
+            this.local = false;
+            return this;
+        }
+
         public K8sClusterBuilder testNamespace(String name) {
             this.namespace = name;
             return this;
         }
 
+        /**
+         * Add a random suffix to the test namespace, so test classes running in parallel,
+         * or in other JVMs, get namespaces of their own.
+         */
+        public K8sClusterBuilder uniqueNamespace(boolean b) {
+            this.uniqueNamespace = b;
+            return this;
+        }
+
         public K8sClusterBuilder failOnExistingTestNamespace(boolean b) {
             this.failOnExistingTestNamespace = b;
             return this;
         }
 
+        /**
+         * Keep a pool of ready test namespaces, named after the test namespace with a random suffix.
+         * A namespace is taken from the pool on setup, and deleted and replaced in the background on tear down.
+         */
+        public K8sClusterBuilder namespacePool(int size) {
+            this.namespacePoolSize = size;
+            return this;
+        }
+
+        /**
+         * Executor for the blocking work behind the CompletableFuture returning create methods.
+         * Defaults to an executor shared by all clusters, using virtual threads when available.
+         */
+        public K8sClusterBuilder executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Time to wait for created resources to be ready, before the returned futures complete exceptionally.
+         */
+        public K8sClusterBuilder readinessTimeout(Duration timeout) {
+            this.readinessTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Max number of resources applied concurrently by createFromSpecifications.
+         */
+        public K8sClusterBuilder maxInFlightApplies(int max) {
+            this.maxInFlightApplies = max;
+            return this;
+        }
+
+        /**
+         * Skip applying resources that are unchanged since last applied, keeping running workloads
+         * when a suite is run again against an existing test namespace. An existing test namespace
+         * is reused, instead of failing or deleting it, on setup, and the test namespace is kept on tear down,
+         * unless it is unique.
+         */
+        public K8sClusterBuilder idempotentApply(boolean b) {
+            this.idempotentApply = b;
+            return this;
+        }
+
+        /**
+         * Reset an existing test namespace, by deleting the workloads and config in it, instead of
+         * deleting and creating the namespace. Only applies when not failing on existing test namespace.
+         */
+        public K8sClusterBuilder resetExistingTestNamespace(boolean b) {
+            this.resetExistingTestNamespace = b;
+            return this;
+        }
+
+        /**
+         * Keep the local cluster when the test run is finished. When false, the cluster is deleted when
+         * disconnected, unless used by other JVMs.
+         */
+        public K8sClusterBuilder keepClusterAlive(boolean b) {
+            this.keepClusterAlive = b;
+            return this;
+        }
+
+        /**
+         * Number of node ports, from 31001, handed out by leaseNodePort and createNodePortService.
+         * A local cluster publishes these ports when created. Defaults to 20.
+         */
+        public K8sClusterBuilder nodePorts(int count) {
+            this.nodePortCount = count;
+            return this;
+        }
+
+        /**
+         * Size the node ports from the configured JUnit parallelism, with {@code perTest} ports for each
+         * test running in parallel.
+         */
+        public K8sClusterBuilder nodePortsPerParallelTest(int perTest) {
+            return nodePorts(perTest * junitParallelism());
+        }
+
+        /**
+         * Max number of concurrent requests of the client, and to the API server. Watches of the resource cache
+         * count as requests, so the limit per host is higher than the default of the fabric8 client.
+         * Defaults to 64 and 32.
+         */
+        public K8sClusterBuilder maxConcurrentRequests(int max, int maxPerHost) {
+            this.maxConcurrentRequests = max;
+            this.maxConcurrentRequestsPerHost = maxPerHost;
+            return this;
+        }
+
+        /**
+         * Use HTTP/2 to the API server, when supported. Defaults to true.
+         */
+        public K8sClusterBuilder http2(boolean b) {
+            this.http2 = b;
+            return this;
+        }
+
+        /**
+         * Idle connections kept open by the client, and for how long. Defaults to 8 connections for 5 minutes.
+         */
+        public K8sClusterBuilder connectionPool(int maxIdleConnections, Duration keepAlive) {
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Shape of the local cluster, like number of nodes and k3s components disabled, used when the cluster
+         * is created. An existing cluster is used as is. Use {@link ClusterProfile#lean()} for a cluster
+         * without ingress and metrics, created in a fraction of the time.
+         */
+        public K8sClusterBuilder clusterProfile(ClusterProfile profile) {
+            this.clusterProfile = profile;
+            return this;
+        }
+
+        /**
+         * Import the images into the local cluster when connected, unless already present with the same id.
+         * Images are pulled and saved once to {user.home}/.k8s-test/images, so a new cluster doesn't pull them
+         * from the network.
+         */
+        public K8sClusterBuilder preloadImages(String... images) {
+            this.preloadImages = Arrays.asList(images);
+            return this;
+        }
+
+        /**
+         * Spread local cluster handles over a pool of {@code size} k3d clusters, each with a lease,
+         * published node ports and kubeconfig of its own. Handles are assigned to the cluster with fewest
+         * handles in this JVM, or by shard key.
+         */
+        public K8sClusterBuilder clusterPool(int size) {
+            this.clusterPoolSize = size;
+            return this;
+        }
+
+        /**
+         * Assign the handle to a cluster of the pool by hash of the key, like the test class name,
+         * instead of to the least loaded cluster.
+         */
+        public K8sClusterBuilder shardKey(String key) {
+            this.shardKey = key;
+            return this;
+        }
+
+        /**
+         * Record the requests to the cluster to a gzipped JSON file, or replay them from the file without a cluster.
+         * Set {@code k8s-test.recording} to {@code record}, {@code replay} or {@code off}. If not set, the file is
+         * replayed if it exists, or else recorded. The recording is written on disconnect. Not supported with
+         * a shared connection, like with {@code @K8sTest(shareCluster = true)}.
+         */
+        public K8sClusterBuilder recording(Path file) {
+            this.recordingFile = file;
+            return this;
+        }
+
+        /**
+         * Record to, or replay from, {@code src/test/resources/k8s-recordings/<test class>.json.gz}.
+         */
+        public K8sClusterBuilder recording(Class<?> testClass) {
+            return recording(Paths.get("src/test/resources/k8s-recordings", testClass.getName() +".json.gz"));
+        }
+
+        /**
+         * Collect metrics of the API requests, per verb, kind and namespace, and write the metrics of the test namespace
+         * to {@code target/k8s-test-metrics/<namespace>.json} on tear down.
+         */
+        public K8sClusterBuilder apiMetrics() {
+            return apiMetrics(Paths.get("target", "k8s-test-metrics"));
+        }
+
+        /**
+         * Collect metrics of the API requests, and write the metrics of the test namespace to the directory on tear down.
+         */
+        public K8sClusterBuilder apiMetrics(Path dir) {
+            this.apiMetricsDir = dir;
+            return this;
+        }
+
         public K8sCluster build() {
+            if (mock) {
+                try {
+                    Class.forName("io.fabric8.kubernetes.client.server.mock.KubernetesServer", false, K8sCluster.class.getClassLoader());
+                } catch (ClassNotFoundException e) {
+                    throw new K8sClusterException("Mock cluster requires io.fabric8:kubernetes-server-mock on the test classpath", e);
+                }
+                return new MockCluster(this);
+            }
             if (local) {
-                return new LocalK3sCluster(namespace, failOnExistingTestNamespace);
+                return new LocalK3sCluster(this);
             }
-            return new CustomCluster(namespace, failOnExistingTestNamespace, configFile);
+            return new CustomCluster(this, configFile);
+        }
+
+        /**
+         * @return fixed parallelism, from system properties or junit-platform.properties, or else the number of processors
+         */
+        static int junitParallelism() {
+            String parallelism = Utils.testProperty("junit.jupiter.execution.parallel.config.fixed.parallelism");
+            return parallelism != null ? Integer.parseInt(parallelism.trim()) : Runtime.getRuntime().availableProcessors();
         }
 
     }
@@ -0,0 +1,12 @@
+package se.alphadev.k8stest;
+
+/**
+ * Thrown when waiting for the cluster, like for resources to be ready, or for a command, runs out of time.
+ */
+public class K8sClusterTimeoutException extends K8sClusterException {
+
+    public K8sClusterTimeoutException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,92 @@
+package se.alphadev.k8stest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Executors for the blocking work behind the CompletableFuture returning cluster APIs,
+ * keeping it off the common ForkJoinPool.
+ */
+@Slf4j
+class K8sExecutors {
+
+    private static final int MAX_THREADS = Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+    private static final int MAX_QUEUED = 1000;
+
+    private static ExecutorService defaultExecutor;
+
+    /**
+     * @return executor shared by all clusters not configured with an executor of their own.
+     * Uses virtual threads when running on a JDK that has them, else a bounded elastic thread pool.
+     */
+    static synchronized ExecutorService defaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = newVirtualThreadExecutor();
+            if (defaultExecutor == null) {
+                defaultExecutor = newBoundedElasticExecutor();
+            }
+        }
+        return defaultExecutor;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            log.debug("Using virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newBoundedElasticExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("k8s-test-%d").build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Like {@link CompletableFuture#supplyAsync(Supplier, java.util.concurrent.Executor)}, but cancelling
+     * the returned future interrupts the running task.
+     */
+    static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, ExecutorService executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(supplier.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Cancel the source futures when the dependent future is cancelled.
+     */
+    static <T> CompletableFuture<T> cancelling(CompletableFuture<T> dependent, CompletableFuture<?>... sources) {
+        dependent.whenComplete((r, e) -> {
+            if (dependent.isCancelled()) {
+                for (CompletableFuture<?> source : sources) {
+                    source.cancel(true);
+                }
+            }
+        });
+        return dependent;
+    }
+}
@@ -0,0 +1,78 @@
+package se.alphadev.k8stest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of latencies, in log linear buckets like HdrHistogram: each power of two of microseconds
+ * is split in {@value #SUB_BUCKETS} linear buckets, so a reported percentile is at most 1/{@value #SUB_BUCKETS}
+ * above the recorded latency.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private volatile long maxMicros;
+
+    void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        totalMicros.add(micros);
+        if (micros > maxMicros) {
+            synchronized (this) {
+                maxMicros = Math.max(maxMicros, micros);
+            }
+        }
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    double meanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalMicros.sum() / (n * 1000.0);
+    }
+
+    double maxMillis() {
+        return maxMicros / 1000.0;
+    }
+
+    /**
+     * @return upper bound of the bucket holding the percentile, in milliseconds
+     */
+    double percentileMillis(double percentile) {
+        long n = count.sum();
+        if (n == 0)
+            return 0;
+        long rank = (long) Math.ceil(percentile / 100 * n);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(upperBound(i), maxMicros) / 1000.0;
+        }
+        return maxMillis();
+    }
+
+    static int index(long micros) {
+        if (micros < 2 * SUB_BUCKETS)
+            return (int) micros;
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return magnitude * SUB_BUCKETS + (int) (micros >>> magnitude);
+    }
+
+    static long upperBound(int index) {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        int magnitude = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
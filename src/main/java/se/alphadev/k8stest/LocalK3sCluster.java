@@ -1,90 +1,280 @@
 package se.alphadev.k8stest;
 
 import static java.nio.charset.Charset.defaultCharset;
-import static org.apache.commons.io.FileUtils.deleteQuietly;
 import static org.awaitility.Awaitility.await;
-import static se.alphadev.k8stest.ShellExec.run;
 
 import io.fabric8.kubernetes.client.Config;
-import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import java.io.File;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.awaitility.core.ConditionTimeoutException;
-import org.buildobjects.process.ExternalProcessFailureException;
-import org.buildobjects.process.ProcBuilder;
+import org.awaitility.pollinterval.IterativePollInterval;
 
 @Slf4j
 class LocalK3sCluster extends K8sCluster {
 
     final static String K3D_VERSION_TAG = "v3.4.0";
-    final static String CLUSTER_NAME = "k3s-test-cluster";
+    private final static Duration MAX_POLL_INTERVAL = Duration.ofSeconds(2);
+    final static String CLUSTER_NAME = ClusterScheduler.CLUSTER_NAME;
 
     final static String K3D_INSTALL_SCRIPT_LOCATION = "k3d-install-script/install.sh";
     final static String K3D_EXEC = RESOURCES_DIR +"/k3d/k3d";
-    private final static String K3D_KUBECONFIG_FILE = System.getProperty("user.home") +"/.config/k3d/"+ CLUSTER_NAME +"/kubeconfig.yaml";
 
     public K3dCommands k3dCmd = new K3dCommands();
 
+    private boolean keepClusterAlive = true;
+    private ClusterProfile clusterProfile = ClusterProfile.defaults();
+    private List<String> preloadImages = Collections.emptyList();
+    private int clusterPoolSize = 1;
+    private String shardKey;
+    private int clusterIndex = -1;
+    private String clusterName;
+    private boolean assigned;
+    private ClusterLease lease;
+    private int[] publishedNodePorts;
+
     protected LocalK3sCluster(String namespace, boolean failOnExistingTestNamespace) {
         super(namespace, failOnExistingTestNamespace);
     }
 
-    protected KubernetesClient doConnect() {
+    protected LocalK3sCluster(K8sClusterBuilder builder) {
+        super(builder);
+        this.keepClusterAlive = builder.keepClusterAlive;
+        this.clusterProfile = builder.clusterProfile;
+        this.preloadImages = builder.preloadImages;
+        this.clusterPoolSize = Math.max(1, builder.clusterPoolSize);
+        this.shardKey = builder.shardKey;
+        if (NodePortAllocator.FIRST_NODE_PORT + clusterPoolSize * super.nodePortCount() - 1 > NodePortAllocator.MAX_NODE_PORT) {
+            throw new K8sClusterException("Node ports of "+ clusterPoolSize +" clusters exceed "+ NodePortAllocator.MAX_NODE_PORT);
+        }
+    }
 
-        log.info("Connect to local k3s cluster");
-        if (!k3dCmd.checkK3dInstalled(K3D_VERSION_TAG)) {
-            k3dCmd.installK3d(K3D_VERSION_TAG);
+    /**
+     * @return name of the cluster this handle is assigned to, from the cluster pool, assigned on first use
+     */
+    synchronized String clusterName() {
+        if (clusterName == null) {
+            clusterIndex = ClusterScheduler.SHARED.assign(clusterPoolSize, shardKey);
+            clusterName = ClusterScheduler.clusterName(clusterIndex);
+            assigned = true;
+            log.info("Using local cluster {}", clusterName);
         }
+        return clusterName;
+    }
 
-        try {
-            deleteQuietly(new File(K3D_KUBECONFIG_FILE));
-            return setupClient( Duration.of(1, ChronoUnit.SECONDS));
-        } catch (ConditionTimeoutException e) {
-            log.info("Unable to connect to existing local cluster. Will create one."); }
+    /**
+     * @return first node port published by the cluster once connected, else the first configured node port,
+     * in a range of its own for each cluster of the pool
+     */
+    @Override
+    int firstNodePort() {
+        return publishedNodePorts != null ? publishedNodePorts[0] : configuredFirstNodePort();
+    }
 
-        try {
-            deleteK3dCluster();
-        } catch (K8sClusterException e) {};
+    /**
+     * @return number of node ports published by the cluster once connected, else the configured number
+     */
+    @Override
+    int nodePortCount() {
+        return publishedNodePorts != null ? publishedNodePorts[1] : super.nodePortCount();
+    }
 
-        k3dCmd.createCluster();
+    private int configuredFirstNodePort() {
+        clusterName();
+        return NodePortAllocator.FIRST_NODE_PORT + clusterIndex * super.nodePortCount();
+    }
+
+    /**
+     * Connect to the local cluster, holding the cluster lock so only one JVM at a time installs k3d or creates the cluster.
+     * An existing cluster is reused, and only deleted and created again if it is unhealthy and no other JVM uses it.
+     * The lease is released if the cluster can't be started or created, so other JVMs may delete the broken cluster.
+     * Images to preload, not already in the cluster, are imported once connected, after the lock is released, as the
+     * lease keeps the cluster from being deleted.
+     */
+    protected KubernetesClient doConnect() {
+
+        String clusterName = clusterName();
+        log.info("Connect to local k3s cluster {}", clusterName);
+        KubernetesClient client = ClusterLease.withClusterLock(clusterName, () -> {
+            if (!k3dCmd.checkK3dInstalled(K3D_VERSION_TAG)) {
+                k3dCmd.installK3d(K3D_VERSION_TAG);
+            }
+            lease = ClusterLease.acquire(clusterName);
+            try {
+                return startOrCreateCluster(clusterName);
+            } catch (RuntimeException e) {
+                lease.release();
+                lease = null;
+                throw e;
+            }
+        });
+        new ImagePreloader(K3D_EXEC, executor()).preload(clusterName, preloadImages);
+        return client;
+    }
+
+    private KubernetesClient startOrCreateCluster(String clusterName) {
+        publishedNodePorts = null;
+        if (k3dCmd.clusterExists(clusterName)) {
+            publishedNodePorts = existingNodePorts(clusterName);
+            try {
+                return setupClient(Duration.of(10, ChronoUnit.SECONDS));
+            } catch (ConditionTimeoutException e) {
+                log.info("Unable to connect to existing local cluster. Will start it.");
+            }
+            try {
+                k3dCmd.startCluster(clusterName);
+                return setupClient(Duration.of(30, ChronoUnit.SECONDS));
+            } catch (ConditionTimeoutException | K8sClusterException e) {
+                if (lease.otherLiveLeases() > 0) {
+                    throw new K8sClusterException("Unable to connect to local cluster "+ clusterName +", in use by other JVMs", e);
+                }
+                log.info("Unable to start existing local cluster. Will create one.");
+            }
+            try {
+                deleteK3dCluster();
+            } catch (K8sClusterException e) {};
+        }
+
+        publishedNodePorts = null;
+        k3dCmd.createCluster(clusterName, clusterProfile, configuredFirstNodePort(), super.nodePortCount());
+        publishedNodePorts = new int[] {configuredFirstNodePort(), super.nodePortCount()};
 
         return setupClient(Duration.of(30, ChronoUnit.SECONDS));
     }
 
+    /**
+     * @return node ports published by the existing cluster, as labeled when created, or null to use the configured
+     * node ports of a cluster created without the label
+     */
+    private int[] existingNodePorts(String clusterName) {
+        String configured = NodePortAllocator.range(configuredFirstNodePort(), super.nodePortCount());
+        int[] published = NodePortAllocator.parseRange(k3dCmd.publishedNodePorts(clusterName));
+        if (published == null) {
+            log.warn("Node ports published by local cluster {} are unknown, assume {}", clusterName, configured);
+            return null;
+        }
+        String range = NodePortAllocator.range(published[0], published[1]);
+        if (!range.equals(configured)) {
+            log.warn("Local cluster {} publishes node ports {}, not the configured {}, until created again", clusterName, range, configured);
+        }
+        return published;
+    }
+
+    /**
+     * Release the lease on the cluster, and the assignment if not torn down. Unless kept alive, the cluster
+     * is deleted when no other JVM uses it.
+     */
+    @Override
+    protected void doDisconnect() {
+        doTearDown();
+        if (lease == null)
+            return;
+        ClusterLease.withClusterLock(clusterName(), () -> {
+            if (lease.release() && !keepClusterAlive && lease.otherLiveLeases() == 0) {
+                deleteK3dCluster();
+            }
+            return null;
+        });
+        lease = null;
+    }
+
+    /**
+     * Release the assignment of this handle to its cluster, so the cluster counts as less loaded.
+     */
+    @Override
+    protected synchronized void doTearDown() {
+        if (assigned) {
+            ClusterScheduler.SHARED.release(clusterIndex);
+            assigned = false;
+        }
+    }
+
+    @Override
+    public String clusterKey() {
+        return "k3d:"+ clusterName();
+    }
+
+    @Override
+    protected List<Object> connectionSettings() {
+        List<Object> settings = super.connectionSettings();
+        settings.addAll(Arrays.asList(keepClusterAlive, clusterProfile, preloadImages));
+        return settings;
+    }
+
     public void deleteK3dCluster() {
-        try {
-            log.info("delete {}", CLUSTER_NAME);
-            run(K3D_EXEC +" cluster delete "+ CLUSTER_NAME).waitFor(10, TimeUnit.SECONDS);
-        } catch (ExternalProcessFailureException | InterruptedException e) {
-            throw new K8sClusterException(e);
+        log.info("delete {}", clusterName());
+        ShellExec.Result result = ShellExec.command(K3D_EXEC, "cluster", "delete", clusterName())
+                .timeout(Duration.ofSeconds(60))
+                .verbose()
+                .execute();
+        if (result.getExitCode() != 0) {
+            log.warn("Unable to delete cluster {}, {}", clusterName(), result.getStderr());
+        } else {
+            k3dCmd.deleteTmpfsDataDir(clusterName());
         }
     }
 
+    /**
+     * Poll for the kubeconfig and then the API server, using the one client created from the kubeconfig,
+     * closed if the cluster doesn't answer in time.
+     */
     private KubernetesClient setupClient(Duration timeout) {
-        await().atMost(timeout).until(
-                () ->  tryCreateKubeConfigFile() && isConnected(new DefaultKubernetesClient()));
-        return new DefaultKubernetesClient();
+        AtomicReference<KubernetesClient> client = new AtomicReference<>();
+        try {
+            await().atMost(timeout)
+                .pollDelay(Duration.ZERO)
+                .pollInterval(new IterativePollInterval(d -> min(d.multipliedBy(2), MAX_POLL_INTERVAL), Duration.ofMillis(250)))
+                .until(() -> {
+                    if (client.get() == null) {
+                        Config config = tryGetKubeConfig();
+                        if (config == null)
+                            return false;
+                        client.set(newClient(config));
+                    }
+                    return isConnected(client.get());
+                });
+            return client.get();
+        } catch (ConditionTimeoutException e) {
+            if (client.get() != null) {
+                client.get().close();
+            }
+            throw e;
+        }
     }
 
-    private boolean tryCreateKubeConfigFile() {
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) < 0 ? a : b;
+    }
 
-        try {
-            String config = ProcBuilder.run(K3D_EXEC, "kubeconfig", "get", CLUSTER_NAME);
+    /**
+     * Get the kubeconfig of the cluster from k3d. Also written to file, for use by other tools.
+     * @return client config, or null if k3d is unable to get the kubeconfig
+     */
+    private Config tryGetKubeConfig() {
+        return ClusterEvents.record("getKubeConfig", "k3d", null, clusterName(), this::getKubeConfig);
+    }
 
-            FileUtils.write(new File(K3D_KUBECONFIG_FILE), config, defaultCharset());
+    private Config getKubeConfig() {
+        try {
+            String config = ShellExec.command(K3D_EXEC, "kubeconfig", "get", clusterName())
+                    .timeout(Duration.ofSeconds(10))
+                    .run().getStdout();
 
-            System.setProperty(Config.KUBERNETES_KUBECONFIG_FILE, K3D_KUBECONFIG_FILE);
-            log.info("kubeconfig written to {}", K3D_KUBECONFIG_FILE);
-            return true;
-        } catch (ExternalProcessFailureException e) {
-            log.warn("{} -> {}", e.getCommand(), e.getStderr());
-            return false;
+            File kubeconfigFile = new File(System.getProperty("user.home") +"/.config/k3d/"+ clusterName() +"/kubeconfig.yaml");
+            FileUtils.write(kubeconfigFile, config, defaultCharset());
+            log.info("kubeconfig written to {}", kubeconfigFile);
+            return Config.fromKubeconfig(config);
+        } catch (K8sClusterException e) {
+            log.warn(e.getMessage());
+            return null;
         } catch (IOException e) {
             throw new K8sClusterException(e);
         }
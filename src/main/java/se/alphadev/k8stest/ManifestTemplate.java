@@ -0,0 +1,88 @@
+package se.alphadev.k8stest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A manifest file compiled into literal text and placeholders, like {@code <name>}, rendered in one pass.
+ * Compiled templates are cached by path, and compiled again when the file is modified.
+ */
+class ManifestTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("<([a-zA-Z][a-zA-Z0-9_-]*)>");
+    private static final Map<Path, ManifestTemplate> CACHE = new ConcurrentHashMap<>();
+
+    private final long lastModified;
+    private final long size;
+    private final String[] literals;
+    private final String[] names;
+    private final int length;
+
+    private ManifestTemplate(String text, long lastModified, long size) {
+        this.lastModified = lastModified;
+        this.size = size;
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(text);
+        int start = 0;
+        while (matcher.find()) {
+            literals.add(text.substring(start, matcher.start()));
+            names.add(matcher.group(1));
+            start = matcher.end();
+        }
+        literals.add(text.substring(start));
+        this.literals = literals.toArray(new String[0]);
+        this.names = names.toArray(new String[0]);
+        this.length = text.length();
+    }
+
+    static ManifestTemplate compile(String text) {
+        return new ManifestTemplate(text, 0, text.length());
+    }
+
+    /**
+     * @return compiled template of the file, from cache if the file is not modified since it was compiled
+     */
+    static ManifestTemplate of(Path file) {
+        try {
+            Path key = file.toAbsolutePath().normalize();
+            BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            ManifestTemplate template = CACHE.get(key);
+            if (template == null || template.lastModified != lastModified || template.size != attributes.size()) {
+                template = new ManifestTemplate(new String(Files.readAllBytes(key), UTF_8), lastModified, attributes.size());
+                CACHE.put(key, template);
+            }
+            return template;
+        } catch (IOException e) {
+            throw new K8sClusterException(e);
+        }
+    }
+
+    /**
+     * Replace placeholders with the variables of the same name. Placeholders without a variable are kept as is.
+     */
+    String render(Map<String, String> variables) {
+        StringBuilder sb = new StringBuilder(length + 64);
+        for (int i = 0; i < names.length; i++) {
+            sb.append(literals[i]);
+            String value = variables.get(names[i]);
+            if (value != null) {
+                sb.append(value);
+            } else {
+                sb.append('<').append(names[i]).append('>');
+            }
+        }
+        return sb.append(literals[names.length]).toString();
+    }
+}
@@ -0,0 +1,154 @@
+package se.alphadev.k8stest;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Namespace;
+import io.fabric8.kubernetes.api.model.NamespaceStatusBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodConditionBuilder;
+import io.fabric8.kubernetes.api.model.PodStatusBuilder;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerStatusBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentStatusBuilder;
+import io.fabric8.kubernetes.api.model.apps.ReplicaSet;
+import io.fabric8.kubernetes.api.model.apps.ReplicaSetStatusBuilder;
+import io.fabric8.kubernetes.api.model.apps.StatefulSet;
+import io.fabric8.kubernetes.api.model.apps.StatefulSetStatusBuilder;
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.internal.readiness.Readiness;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cluster backed by the in JVM fabric8 mock server in CRUD mode, for tests only checking the resources created.
+ * Nothing runs in the mock server, so workloads are marked ready when applied.
+ */
+@Slf4j
+class MockCluster extends K8sCluster {
+
+    /**
+     * Resource versions of the ready workloads written, as the mock server assigns none. Shared by all mock
+     * clusters, so they increase also for clusters sharing a mock server.
+     */
+    private static final AtomicLong RESOURCE_VERSIONS = new AtomicLong();
+
+    private KubernetesServer server;
+
+    protected MockCluster(K8sClusterBuilder builder) {
+        super(builder);
+    }
+
+    @Override
+    protected KubernetesClient doConnect() {
+        server = new KubernetesServer(false, true);
+        server.before();
+        Config config = server.getClient().getConfiguration();
+        log.info("Started mock server at {}", config.getMasterUrl());
+        return newClient(config);
+    }
+
+    @Override
+    protected void doDisconnect() {
+        if (server != null) {
+            server.after();
+            server = null;
+        }
+    }
+
+    @Override
+    public String clusterKey() {
+        return "mock:"+ System.identityHashCode(this);
+    }
+
+    /**
+     * Create the namespace, and make it active as there is no namespace controller.
+     */
+    @Override
+    protected Namespace createNamespace(Namespace namespace) {
+        Namespace created = super.createNamespace(namespace);
+        created.setStatus(new NamespaceStatusBuilder().withPhase("Active").build());
+        return client().namespaces().createOrReplace(created);
+    }
+
+    /**
+     * Create or replace the resource, and for a workload not already ready, replace its status with a ready status,
+     * at a new resource version like an API server assigns.
+     */
+    @Override
+    protected <T extends HasMetadata> T createOrReplace(T resource) {
+        T applied = super.createOrReplace(resource);
+        if (Readiness.isReadinessApplicable(applied.getClass()) && Readiness.isReady(applied))
+            return applied;
+        return markReady(applied) ? replaceWithNewVersion(applied) : applied;
+    }
+
+    /**
+     * Replace the resource at a new resource version. The version is locked, as the mock server drops the resource
+     * version of a resource created or replaced by createOrReplace.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends HasMetadata> T replaceWithNewVersion(T resource) {
+        String version = Long.toString(RESOURCE_VERSIONS.incrementAndGet());
+        String namespace = resource.getMetadata().getNamespace() != null ? resource.getMetadata().getNamespace() : namespace();
+        String name = resource.getMetadata().getName();
+        if (resource instanceof Pod)
+            return (T) client().pods().inNamespace(namespace).withName(name).lockResourceVersion(version).replace((Pod) resource);
+        if (resource instanceof Deployment)
+            return (T) client().apps().deployments().inNamespace(namespace).withName(name).lockResourceVersion(version).replace((Deployment) resource);
+        if (resource instanceof StatefulSet)
+            return (T) client().apps().statefulSets().inNamespace(namespace).withName(name).lockResourceVersion(version).replace((StatefulSet) resource);
+        if (resource instanceof ReplicaSet)
+            return (T) client().apps().replicaSets().inNamespace(namespace).withName(name).lockResourceVersion(version).replace((ReplicaSet) resource);
+        if (resource instanceof ReplicationController)
+            return (T) client().replicationControllers().inNamespace(namespace).withName(name).lockResourceVersion(version).replace((ReplicationController) resource);
+        return client().resource(resource).createOrReplace();
+    }
+
+    private static boolean markReady(HasMetadata resource) {
+        if (resource instanceof Pod) {
+            ((Pod) resource).setStatus(new PodStatusBuilder()
+                    .withPhase("Running")
+                    .addToConditions(new PodConditionBuilder().withType("Ready").withStatus("True").build())
+                    .build());
+            return true;
+        }
+        if (resource instanceof Deployment) {
+            int replicas = replicas(((Deployment) resource).getSpec().getReplicas());
+            ((Deployment) resource).setStatus(new DeploymentStatusBuilder()
+                    .withReplicas(replicas).withReadyReplicas(replicas).withAvailableReplicas(replicas).withUpdatedReplicas(replicas)
+                    .withObservedGeneration(resource.getMetadata().getGeneration())
+                    .build());
+            return true;
+        }
+        if (resource instanceof StatefulSet) {
+            int replicas = replicas(((StatefulSet) resource).getSpec().getReplicas());
+            ((StatefulSet) resource).setStatus(new StatefulSetStatusBuilder()
+                    .withReplicas(replicas).withReadyReplicas(replicas).withCurrentReplicas(replicas).withUpdatedReplicas(replicas)
+                    .withObservedGeneration(resource.getMetadata().getGeneration())
+                    .build());
+            return true;
+        }
+        if (resource instanceof ReplicaSet) {
+            int replicas = replicas(((ReplicaSet) resource).getSpec().getReplicas());
+            ((ReplicaSet) resource).setStatus(new ReplicaSetStatusBuilder()
+                    .withReplicas(replicas).withReadyReplicas(replicas).withAvailableReplicas(replicas)
+                    .withObservedGeneration(resource.getMetadata().getGeneration())
+                    .build());
+            return true;
+        }
+        if (resource instanceof ReplicationController) {
+            int replicas = replicas(((ReplicationController) resource).getSpec().getReplicas());
+            ((ReplicationController) resource).setStatus(new ReplicationControllerStatusBuilder()
+                    .withReplicas(replicas).withReadyReplicas(replicas).withAvailableReplicas(replicas)
+                    .build());
+            return true;
+        }
+        return false;
+    }
+
+    private static int replicas(Integer replicas) {
+        return replicas != null ? replicas : 1;
+    }
+}
@@ -0,0 +1,106 @@
+package se.alphadev.k8stest;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pool of ready test namespaces, each with the cluster-config config map created.
+ * Released namespaces are deleted, and the pool replenished, on a background thread.
+ */
+@Slf4j
+class NamespacePool {
+
+    static final String POOL_LABEL = "k8s-test/namespace-pool";
+    private static final int CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final K8sCluster cluster;
+    private final String prefix;
+    private final int size;
+    private final BlockingQueue<String> ready = new LinkedBlockingQueue<>();
+    private final ExecutorService recycler = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("k8s-test-namespace-pool-%d").build());
+    private volatile boolean closed;
+
+    NamespacePool(K8sCluster cluster, String prefix, int size) {
+        this.cluster = cluster;
+        this.prefix = prefix;
+        this.size = size;
+    }
+
+    NamespacePool start() {
+        log.info("Start namespace pool {}, size {}", prefix, size);
+        for (int i = 0; i < size; i++) {
+            recycler.submit(this::replenish);
+        }
+        return this;
+    }
+
+    /**
+     * @return a ready namespace. Created in the calling thread if the pool is empty.
+     */
+    String acquire() {
+        String namespace = ready.poll();
+        if (namespace == null) {
+            log.info("Namespace pool {} is empty, create namespace", prefix);
+            namespace = createNamespace();
+        } else {
+            recycler.submit(this::replenish);
+        }
+        return namespace;
+    }
+
+    void release(String namespace) {
+        recycler.submit(() -> cluster.deleteNamespaceNoWait(namespace));
+    }
+
+    /**
+     * Delete the released namespaces still queued, waiting at most {@value #CLOSE_TIMEOUT_SECONDS}s, and the ready
+     * namespaces. Replenishing stops.
+     */
+    void close() {
+        closed = true;
+        recycler.shutdown();
+        try {
+            if (!recycler.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Namespace pool {} not closed in {}s, released namespaces may be left", prefix, CLOSE_TIMEOUT_SECONDS);
+                recycler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recycler.shutdownNow();
+        }
+        ready.forEach(cluster::deleteNamespaceNoWait);
+        ready.clear();
+    }
+
+    private void replenish() {
+        if (closed)
+            return;
+        try {
+            String namespace = createNamespace();
+            if (closed) {
+                cluster.deleteNamespaceNoWait(namespace);
+            } else {
+                ready.add(namespace);
+            }
+        } catch (Exception e) {
+            log.warn("Unable to replenish namespace pool {}", prefix, e);
+        }
+    }
+
+    private String createNamespace() {
+        String namespace = prefix +"-"+ UUID.randomUUID().toString().substring(0, 8);
+        Map<String, String> labels = ImmutableMap.of(POOL_LABEL, prefix);
+        cluster.createTestNamespaceAndWait(30, namespace, labels);
+        cluster.createEnvConfigMap(namespace);
+        return namespace;
+    }
+}
@@ -0,0 +1,82 @@
+package se.alphadev.k8stest;
+
+import com.google.common.collect.ImmutableList;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Empties a namespace of workloads and config, keeping the namespace itself, its labels and the cluster-config config map.
+ */
+@Slf4j
+class NamespaceReset {
+
+    private static final List<String> KEPT_CONFIG_MAPS = ImmutableList.of("cluster-config", "kube-root-ca.crt");
+    private static final String SERVICE_ACCOUNT_TOKEN = "kubernetes.io/service-account-token";
+
+    private final KubernetesClient client;
+    private final String namespace;
+    private final ExecutorService executor;
+
+    NamespaceReset(KubernetesClient client, String namespace, ExecutorService executor) {
+        this.client = client;
+        this.namespace = namespace;
+        this.executor = executor;
+    }
+
+    /**
+     * Delete all kinds concurrently, with zero grace period, and wait until all pods are gone. Config maps and secrets
+     * to keep are filtered out of the listed items, not by field selectors, that the mock cluster ignores.
+     */
+    void reset(int timeoutInSeconds) {
+        long start = System.currentTimeMillis();
+        List<Supplier<Boolean>> deletes = ImmutableList.of(
+            () -> client.apps().deployments().inNamespace(namespace).withGracePeriod(0).delete(),
+            () -> client.apps().statefulSets().inNamespace(namespace).withGracePeriod(0).delete(),
+            () -> client.apps().daemonSets().inNamespace(namespace).withGracePeriod(0).delete(),
+            () -> client.apps().replicaSets().inNamespace(namespace).withGracePeriod(0).delete(),
+            () -> client.batch().jobs().inNamespace(namespace).withGracePeriod(0).delete(),
+            () -> client.batch().cronjobs().inNamespace(namespace).withGracePeriod(0).delete(),
+            () -> client.pods().inNamespace(namespace).withGracePeriod(0).delete(),
+            () -> client.services().inNamespace(namespace).withGracePeriod(0).delete(),
+            () -> client.configMaps().inNamespace(namespace).delete(client.configMaps().inNamespace(namespace).list().getItems().stream()
+                    .filter(configMap -> !KEPT_CONFIG_MAPS.contains(configMap.getMetadata().getName()))
+                    .collect(Collectors.toList())),
+            () -> client.secrets().inNamespace(namespace).delete(client.secrets().inNamespace(namespace).list().getItems().stream()
+                    .filter(secret -> !SERVICE_ACCOUNT_TOKEN.equals(secret.getType()))
+                    .collect(Collectors.toList())));
+
+        join(deletes.stream()
+                .map(delete -> K8sExecutors.supplyAsync(delete, executor))
+                .collect(Collectors.toList()));
+
+        List<Pod> remaining = client.pods().inNamespace(namespace).list().getItems();
+        join(remaining.stream()
+                .map(pod -> K8sExecutors.supplyAsync(() -> {
+                    try {
+                        return client.pods().inNamespace(namespace).withName(pod.getMetadata().getName())
+                                .waitUntilCondition(Objects::isNull, timeoutInSeconds, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {throw new K8sClusterException(e);}
+                }, executor))
+                .collect(Collectors.toList()));
+
+        log.info("Reset namespace {} in {} ms", namespace, System.currentTimeMillis() - start);
+    }
+
+    private static void join(List<? extends CompletableFuture<?>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new K8sClusterException("Unable to reset namespace", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package se.alphadev.k8stest;
+
+import java.util.BitSet;
+import java.util.Collection;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Leases node ports from the range published by the cluster. A port is not leased again until released,
+ * or while known to be in use by a service in the cluster.
+ */
+@Slf4j
+class NodePortAllocator {
+
+    static final int FIRST_NODE_PORT = 31001;
+    static final int MAX_NODE_PORT = 32767;
+
+    private final int first;
+    private final int count;
+    private final BitSet leased;
+    private final BitSet inUse;
+    private int next;
+
+    NodePortAllocator(int first, int count) {
+        this.first = first;
+        this.count = Math.min(count, MAX_NODE_PORT - first + 1);
+        this.leased = new BitSet(this.count);
+        this.inUse = new BitSet(this.count);
+    }
+
+    /**
+     * @return a free port
+     * @throws K8sClusterException if all ports in the range are leased or in use
+     */
+    synchronized int lease() {
+        for (int i = 0; i < count; i++) {
+            int index = (next + i) % count;
+            if (!leased.get(index) && !inUse.get(index)) {
+                leased.set(index);
+                next = (index + 1) % count;
+                return first + index;
+            }
+        }
+        throw new K8sClusterException("No free node port in range "+ first +"-"+ (first + count - 1));
+    }
+
+    synchronized void release(int port) {
+        if (contains(port)) {
+            leased.clear(port - first);
+        }
+    }
+
+    /**
+     * Mark a port as in use by a service, not leased from this allocator.
+     */
+    synchronized void markInUse(int port) {
+        if (contains(port)) {
+            log.debug("Node port {} is in use", port);
+            inUse.set(port - first);
+        }
+    }
+
+    /**
+     * Replace the ports known to be in use by services.
+     */
+    synchronized void setInUse(Collection<Integer> ports) {
+        inUse.clear();
+        ports.forEach(this::markInUse);
+    }
+
+    /**
+     * @return the range of ports, like 31001-31020
+     */
+    static String range(int first, int count) {
+        return first +"-"+ (first + count - 1);
+    }
+
+    /**
+     * @return first port and number of ports of the range, or null if not a range of node ports
+     */
+    static int[] parseRange(String range) {
+        String[] bounds = range == null ? new String[0] : range.trim().split("-");
+        if (bounds.length != 2)
+            return null;
+        try {
+            int first = Integer.parseInt(bounds[0]);
+            int last = Integer.parseInt(bounds[1]);
+            return first > 0 && last >= first && last <= MAX_NODE_PORT ? new int[] {first, last - first + 1} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean contains(int port) {
+        return port >= first && port < first + count;
+    }
+}
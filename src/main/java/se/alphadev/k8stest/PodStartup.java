@@ -0,0 +1,169 @@
+package se.alphadev.k8stest;
+
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodCondition;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Value;
+
+/**
+ * Startup timeline of a pod, from pod conditions, container statuses and the events of the pod:
+ * created, scheduled, image pull started and finished, containers started and ready. Steps not reached,
+ * or not reported, are null. Events have second precision.
+ */
+@Value
+public class PodStartup {
+
+    String pod;
+    String node;
+    Instant created;
+    Instant scheduled;
+    Instant pullStarted;
+    Instant pullFinished;
+    Instant started;
+    Instant ready;
+    /**
+     * Reasons containers are waiting, like ImagePullBackOff or CrashLoopBackOff
+     */
+    List<String> waiting;
+
+    static PodStartup of(Pod pod, List<Event> events) {
+        List<Event> podEvents = events.stream()
+                .filter(e -> e.getInvolvedObject() != null
+                        && "Pod".equals(e.getInvolvedObject().getKind())
+                        && pod.getMetadata().getName().equals(e.getInvolvedObject().getName()))
+                .collect(Collectors.toList());
+        List<ContainerStatus> containers = pod.getStatus() != null && pod.getStatus().getContainerStatuses() != null
+                ? pod.getStatus().getContainerStatuses() : Collections.emptyList();
+        return new PodStartup(
+                pod.getMetadata().getName(),
+                pod.getSpec() != null ? pod.getSpec().getNodeName() : null,
+                time(pod.getMetadata().getCreationTimestamp()),
+                first(condition(pod, "PodScheduled"), reason(podEvents, "Scheduled", PodStartup::min)),
+                reason(podEvents, "Pulling", PodStartup::min),
+                reason(podEvents, "Pulled", PodStartup::max),
+                first(containers.stream()
+                        .map(c -> c.getState() != null && c.getState().getRunning() != null ? time(c.getState().getRunning().getStartedAt()) : null)
+                        .filter(Objects::nonNull).reduce(PodStartup::max).orElse(null),
+                    reason(podEvents, "Started", PodStartup::max)),
+                condition(pod, "Ready"),
+                containers.stream()
+                        .filter(c -> c.getState() != null && c.getState().getWaiting() != null && c.getState().getWaiting().getReason() != null)
+                        .map(c -> c.getName() +": "+ c.getState().getWaiting().getReason())
+                        .collect(Collectors.toList()));
+    }
+
+    public Optional<Duration> scheduling() {
+        return between(created, scheduled);
+    }
+
+    public Optional<Duration> imagePull() {
+        return between(pullStarted, pullFinished);
+    }
+
+    /**
+     * @return time from scheduled, or image pulled, to containers started
+     */
+    public Optional<Duration> containerStart() {
+        return between(pullFinished != null ? pullFinished : scheduled, started);
+    }
+
+    /**
+     * @return time from containers started to ready, the startup of the application itself
+     */
+    public Optional<Duration> readiness() {
+        return between(started, ready);
+    }
+
+    public Optional<Duration> total() {
+        return between(created, ready);
+    }
+
+    @Override
+    public String toString() {
+        List<String> steps = new ArrayList<>();
+        scheduling().ifPresent(d -> steps.add("scheduled "+ seconds(d) + (node != null ? " on "+ node : "")));
+        imagePull().ifPresent(d -> steps.add("image pull "+ seconds(d)));
+        containerStart().ifPresent(d -> steps.add("container start "+ seconds(d)));
+        readiness().ifPresent(d -> steps.add("ready "+ seconds(d)));
+        if (ready == null) {
+            steps.add(nextStep() +" not reached");
+        }
+        waiting.forEach(w -> steps.add("waiting "+ w));
+        return "pod "+ pod +": "+ String.join(", ", steps) + total().map(d -> ", total "+ seconds(d)).orElse("");
+    }
+
+    private String nextStep() {
+        if (scheduled == null)
+            return "scheduled";
+        if (pullStarted != null && pullFinished == null)
+            return "image pulled";
+        if (started == null)
+            return "started";
+        return "ready";
+    }
+
+    private static Instant condition(Pod pod, String type) {
+        if (pod.getStatus() == null || pod.getStatus().getConditions() == null)
+            return null;
+        return pod.getStatus().getConditions().stream()
+                .filter(c -> type.equals(c.getType()) && "True".equals(c.getStatus()))
+                .map(PodCondition::getLastTransitionTime)
+                .map(PodStartup::time)
+                .filter(Objects::nonNull)
+                .findFirst().orElse(null);
+    }
+
+    private static Instant reason(List<Event> events, String reason, BinaryOperator<Instant> pick) {
+        return events.stream()
+                .filter(e -> reason.equals(e.getReason()))
+                .map(PodStartup::time)
+                .filter(Objects::nonNull)
+                .reduce(pick).orElse(null);
+    }
+
+    private static Instant time(Event event) {
+        return Stream.of(
+                    event.getEventTime() != null ? event.getEventTime().getTime() : null,
+                    event.getFirstTimestamp(),
+                    event.getLastTimestamp())
+                .map(PodStartup::time)
+                .filter(Objects::nonNull)
+                .findFirst().orElse(null);
+    }
+
+    private static Instant time(String timestamp) {
+        return timestamp != null && !timestamp.isEmpty() ? Instant.parse(timestamp) : null;
+    }
+
+    private static Instant first(Instant a, Instant b) {
+        return a != null ? a : b;
+    }
+
+    private static Instant min(Instant a, Instant b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static Instant max(Instant a, Instant b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static Optional<Duration> between(Instant from, Instant to) {
+        return from != null && to != null ? Optional.of(Duration.between(from, to)) : Optional.empty();
+    }
+
+    private static String seconds(Duration d) {
+        return String.format(Locale.ROOT, "%.1fs", d.toMillis() / 1000.0);
+    }
+}
@@ -0,0 +1,73 @@
+package se.alphadev.k8stest;
+
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Pod;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Profiles the startup of the pods in a test namespace, from the pods and events in the resource cache.
+ * The events informer is only started when a profile is asked for.
+ */
+@Slf4j
+class PodStartupProfiler {
+
+    private final ResourceCache cache;
+
+    PodStartupProfiler(ResourceCache cache) {
+        this.cache = cache;
+    }
+
+    List<PodStartup> all() {
+        List<Event> events = cache.list(Event.class);
+        return cache.list(Pod.class).stream()
+                .map(p -> PodStartup.of(p, events))
+                .collect(Collectors.toList());
+    }
+
+    Optional<PodStartup> of(String podName) {
+        return Optional.ofNullable(cache.get(Pod.class, podName))
+                .map(p -> PodStartup.of(p, cache.list(Event.class)));
+    }
+
+    /**
+     * @return startup of the pod, or of the pods with the resource name as app label, like the pods of a deployment
+     */
+    List<PodStartup> of(HasMetadata resource) {
+        if (resource instanceof Pod)
+            return of(resource.getMetadata().getName()).map(Collections::singletonList).orElse(Collections.emptyList());
+        List<Event> events = cache.list(Event.class);
+        return cache.byApp(Pod.class, resource.getMetadata().getName()).stream()
+                .map(p -> PodStartup.of(p, events))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the startup of the pods, one per line, to add to a readiness timeout. Never fails.
+     */
+    String describe(List<PodStartup> pods) {
+        return pods.isEmpty() ? "no pods found" : pods.stream().map(PodStartup::toString).collect(Collectors.joining("\n"));
+    }
+
+    String describe(HasMetadata resource) {
+        try {
+            return describe(of(resource));
+        } catch (RuntimeException e) {
+            log.debug("Unable to profile startup of {}", resource.getMetadata().getName(), e);
+            return "pod startup unknown, "+ e.getMessage();
+        }
+    }
+
+    String describeNotReady() {
+        try {
+            return describe(all().stream().filter(p -> p.getReady() == null).collect(Collectors.toList()));
+        } catch (RuntimeException e) {
+            log.debug("Unable to profile startup of pods", e);
+            return "pod startup unknown, "+ e.getMessage();
+        }
+    }
+}
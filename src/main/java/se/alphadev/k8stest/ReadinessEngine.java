@@ -0,0 +1,278 @@
+package se.alphadev.k8stest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.ReplicaSet;
+import io.fabric8.kubernetes.api.model.apps.StatefulSet;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.internal.readiness.Readiness;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tracks readiness of resources in a test namespace, using the informers of the namespace's resource cache.
+ * Futures returned are completed as soon as an event shows the resource is ready, as applied: the same object,
+ * at the resource version and generation applied, observed by its controller. On timeout, the startup of the pods waited for is added
+ * to the message.
+ */
+@Slf4j
+class ReadinessEngine {
+
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = timeouts();
+
+    private final KubernetesClient client;
+    private final ResourceCache cache;
+    private final String namespace;
+    private final ExecutorService executor;
+    private final PodStartupProfiler profiler;
+    private final Set<Class<?>> watched = ConcurrentHashMap.newKeySet();
+    private final Map<String, List<Waiter>> pending = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> podReadiness = new ConcurrentHashMap<>();
+    private final List<CompletableFuture<Void>> allPodsReady = new CopyOnWriteArrayList<>();
+
+    ReadinessEngine(KubernetesClient client, ResourceCache cache, String namespace, ExecutorService executor, PodStartupProfiler profiler) {
+        this.client = client;
+        this.cache = cache;
+        this.namespace = namespace;
+        this.executor = executor;
+        this.profiler = profiler;
+    }
+
+    /**
+     * @param resource resource as applied, so a replaced resource is not taken as ready from the status of the
+     * object or generation it replaced
+     * @return future completed with the resource when it is ready, or exceptionally on timeout.
+     * Cancelling the future stops waiting.
+     */
+    @SuppressWarnings("unchecked")
+    <T extends HasMetadata> CompletableFuture<T> whenReady(T resource, long timeout, TimeUnit unit) {
+        if (!Readiness.isReadinessApplicable(resource.getClass())) {
+            return CompletableFuture.completedFuture(resource);
+        }
+        if (!ResourceCache.isCached(resource.getClass())) {
+            return K8sExecutors.supplyAsync(() -> {
+                try {
+                    return (T) client.resource(resource).inNamespace(namespace).waitUntilReady(timeout, unit);
+                } catch (InterruptedException e) {throw new K8sClusterException(e);}
+            }, executor);
+        }
+
+        ensureWatching(resource.getClass());
+        String key = key(resource);
+        Waiter waiter = new Waiter(resource);
+        CompletableFuture<HasMetadata> future = waiter.future;
+        pending.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(waiter);
+        withTimeout(future, timeout, unit, key, () -> profiler.describe(resource));
+        future.whenComplete((r, e) -> remove(key, waiter));
+
+        HasMetadata current = cache.get(resource.getClass(), resource.getMetadata().getName());
+        if (current != null) {
+            onChange(current);
+        }
+        return K8sExecutors.cancelling(future.thenApply(r -> (T) r), future);
+    }
+
+    CompletableFuture<List<HasMetadata>> whenAllReady(List<HasMetadata> resources, long timeout, TimeUnit unit) {
+        List<CompletableFuture<HasMetadata>> futures = resources.stream()
+                .map(r -> whenReady(r, timeout, unit))
+                .collect(Collectors.toList());
+        CompletableFuture<?>[] sources = futures.toArray(new CompletableFuture[0]);
+        return K8sExecutors.cancelling(
+                CompletableFuture.allOf(sources)
+                    .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList())),
+                sources);
+    }
+
+    /**
+     * @return future completed when there is at least one pod in the namespace, and all pods are ready
+     */
+    CompletableFuture<Void> whenAllPodsReady(long timeout, TimeUnit unit) {
+        ensureWatching(Pod.class);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        allPodsReady.add(future);
+        withTimeout(future, timeout, unit, "all pods in "+ namespace, profiler::describeNotReady);
+        future.whenComplete((r, e) -> allPodsReady.remove(future));
+        checkAllPodsReady();
+        return future;
+    }
+
+    void close() {
+        pending.values().forEach(waiters -> waiters.forEach(w -> w.future.cancel(false)));
+        allPodsReady.forEach(f -> f.cancel(false));
+    }
+
+    private void onChange(HasMetadata resource) {
+        if (resource instanceof Pod) {
+            podReadiness.put(resource.getMetadata().getName(), Readiness.isReady(resource));
+            checkAllPodsReady();
+        }
+        List<Waiter> waiters = pending.get(key(resource));
+        if (waiters != null && Readiness.isReady(resource)) {
+            waiters.stream().filter(w -> w.isApplied(resource)).forEach(w -> {
+                log.info("{} {} is ready", resource.getKind(), resource.getMetadata().getName());
+                w.future.complete(resource);
+            });
+        }
+    }
+
+    private void onDelete(HasMetadata resource) {
+        if (resource instanceof Pod) {
+            podReadiness.remove(resource.getMetadata().getName());
+            checkAllPodsReady();
+        }
+    }
+
+    private void checkAllPodsReady() {
+        if (!podReadiness.isEmpty() && !podReadiness.containsValue(false)) {
+            allPodsReady.forEach(f -> f.complete(null));
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void ensureWatching(Class<?> kind) {
+        if (!watched.add(kind))
+            return;
+        if (kind == Pod.class) {
+            // Seed pod readiness from the synced cache, so all pods are known before the first event
+            cache.list(Pod.class).forEach(p -> podReadiness.put(p.getMetadata().getName(), Readiness.isReady(p)));
+        }
+        cache.addEventHandler((Class) kind, new ResourceEventHandler<HasMetadata>() {
+            @Override
+            public void onAdd(HasMetadata resource) {
+                onChange(resource);
+            }
+
+            @Override
+            public void onUpdate(HasMetadata oldResource, HasMetadata newResource) {
+                onChange(newResource);
+            }
+
+            @Override
+            public void onDelete(HasMetadata resource, boolean deletedFinalStateUnknown) {
+                ReadinessEngine.this.onDelete(resource);
+            }
+        });
+    }
+
+    private void remove(String key, Waiter waiter) {
+        pending.computeIfPresent(key, (k, waiters) -> {
+            waiters.remove(waiter);
+            return waiters.isEmpty() ? null : waiters;
+        });
+    }
+
+    /**
+     * Complete the future exceptionally on timeout. The pod startup is described on the executor, as it may start
+     * the events informer and wait for it to sync, and the timeout thread is shared by all clusters. The timeout is
+     * cancelled when the future completes, so it doesn't hold on to the future until it would have timed out.
+     */
+    private void withTimeout(CompletableFuture<?> future, long timeout, TimeUnit unit, String what, Supplier<String> podStartup) {
+        String message = "Timed out after "+ unit.toSeconds(timeout) +"s waiting for "+ what +" to be ready";
+        ScheduledFuture<?> timeoutTask = TIMEOUTS.schedule(() -> {
+            if (future.isDone())
+                return;
+            try {
+                executor.execute(() -> future.completeExceptionally(new K8sClusterTimeoutException(message +"\n"+ podStartup.get())));
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(new K8sClusterTimeoutException(message));
+            }
+        }, timeout, unit);
+        future.whenComplete((result, e) -> timeoutTask.cancel(false));
+    }
+
+    /**
+     * @return timeout thread, removing cancelled timeouts from its queue
+     */
+    private static ScheduledThreadPoolExecutor timeouts() {
+        ScheduledThreadPoolExecutor timeouts = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("k8s-test-readiness-timeout-%d").build());
+        timeouts.setRemoveOnCancelPolicy(true);
+        return timeouts;
+    }
+
+    private static String key(HasMetadata resource) {
+        return resource.getKind() +"/"+ resource.getMetadata().getName();
+    }
+
+    /**
+     * @return generation of the workload observed by its controller, or null if not a workload or not observed
+     */
+    private static Long observedGeneration(HasMetadata resource) {
+        if (resource instanceof Deployment)
+            return ((Deployment) resource).getStatus() != null ? ((Deployment) resource).getStatus().getObservedGeneration() : null;
+        if (resource instanceof StatefulSet)
+            return ((StatefulSet) resource).getStatus() != null ? ((StatefulSet) resource).getStatus().getObservedGeneration() : null;
+        if (resource instanceof ReplicaSet)
+            return ((ReplicaSet) resource).getStatus() != null ? ((ReplicaSet) resource).getStatus().getObservedGeneration() : null;
+        return null;
+    }
+
+    private static boolean isWorkload(HasMetadata resource) {
+        return resource instanceof Deployment || resource instanceof StatefulSet || resource instanceof ReplicaSet;
+    }
+
+    /**
+     * @return true if both resource versions are known, and the first is older than the second. Resource versions
+     * are compared as numbers, as assigned by etcd, and not compared if not numbers.
+     */
+    private static boolean isOlder(String resourceVersion, String than) {
+        if (resourceVersion == null || than == null)
+            return false;
+        try {
+            return Long.parseLong(resourceVersion) < Long.parseLong(than);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A future waiting for the resource as applied, with the uid, resource version and generation it was applied
+     * with, when known.
+     */
+    private static class Waiter {
+        final CompletableFuture<HasMetadata> future = new CompletableFuture<>();
+        final String uid;
+        final String resourceVersion;
+        final Long generation;
+
+        Waiter(HasMetadata applied) {
+            this.uid = applied.getMetadata().getUid();
+            this.resourceVersion = applied.getMetadata().getResourceVersion();
+            this.generation = applied.getMetadata().getGeneration();
+        }
+
+        /**
+         * @return true if the resource is the object applied, at the resource version and generation applied or
+         * later, and a workload's status is observed from that generation. A copy from before the apply, still in
+         * the cache or in an event not yet handled, is not the resource applied.
+         */
+        boolean isApplied(HasMetadata resource) {
+            if (uid != null && !uid.equals(resource.getMetadata().getUid()))
+                return false;
+            if (isOlder(resource.getMetadata().getResourceVersion(), resourceVersion))
+                return false;
+            Long current = resource.getMetadata().getGeneration();
+            if (generation != null && (current == null || current < generation))
+                return false;
+            if (current == null || !isWorkload(resource))
+                return true;
+            Long observed = observedGeneration(resource);
+            return observed != null && observed >= current;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package se.alphadev.k8stest;
+
+import com.google.common.collect.ImmutableMap;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapList;
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.EventList;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceList;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentList;
+import io.fabric8.kubernetes.api.model.apps.ReplicaSet;
+import io.fabric8.kubernetes.api.model.apps.ReplicaSetList;
+import io.fabric8.kubernetes.api.model.apps.StatefulSet;
+import io.fabric8.kubernetes.api.model.apps.StatefulSetList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.OperationContext;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In memory cache of the resources in a test namespace, kept up to date by one shared informer per kind.
+ * Informers are started on first use of a kind.
+ */
+@Slf4j
+class ResourceCache {
+
+    static final String APP_INDEX = "app";
+
+    private static final long SYNC_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    @SuppressWarnings("rawtypes")
+    private static final Map<Class<? extends HasMetadata>, Class<? extends KubernetesResourceList>> LIST_TYPES =
+            ImmutableMap.<Class<? extends HasMetadata>, Class<? extends KubernetesResourceList>>builder()
+                .put(Pod.class, PodList.class)
+                .put(Deployment.class, DeploymentList.class)
+                .put(Service.class, ServiceList.class)
+                .put(ConfigMap.class, ConfigMapList.class)
+                .put(ReplicaSet.class, ReplicaSetList.class)
+                .put(StatefulSet.class, StatefulSetList.class)
+                .put(Event.class, EventList.class)
+                .build();
+
+    private final String namespace;
+    private final SharedInformerFactory factory;
+    private final Map<Class<?>, SharedIndexInformer<?>> informers = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    ResourceCache(KubernetesClient client, String namespace) {
+        this.namespace = namespace;
+        this.factory = client.informers();
+    }
+
+    static boolean isCached(Class<?> kind) {
+        return LIST_TYPES.containsKey(kind);
+    }
+
+    <T extends HasMetadata> List<T> list(Class<T> kind) {
+        return informer(kind).getIndexer().list();
+    }
+
+    <T extends HasMetadata> T get(Class<T> kind, String name) {
+        return informer(kind).getIndexer().getByKey(namespace +"/"+ name);
+    }
+
+    /**
+     * @return resources with the given value of the app label
+     */
+    <T extends HasMetadata> List<T> byApp(Class<T> kind, String app) {
+        return informer(kind).getIndexer().byIndex(APP_INDEX, app);
+    }
+
+    <T extends HasMetadata> void addEventHandler(Class<T> kind, ResourceEventHandler<T> handler) {
+        informer(kind).addEventHandler(handler);
+    }
+
+    void close() {
+        closed = true;
+        informers.values().forEach(SharedIndexInformer::stop);
+        informers.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends HasMetadata> SharedIndexInformer<T> informer(Class<T> kind) {
+        if (closed)
+            throw new K8sClusterException("Cache of namespace "+ namespace +" is closed");
+        return (SharedIndexInformer<T>) informers.computeIfAbsent(kind, k -> startInformer(kind));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private <T extends HasMetadata> SharedIndexInformer<T> startInformer(Class<T> kind) {
+        if (!isCached(kind))
+            throw new K8sClusterException(kind.getSimpleName() +" is not cached");
+
+        log.debug("Start informer for {} in namespace {}", kind.getSimpleName(), namespace);
+        SharedIndexInformer<T> informer = factory.sharedIndexInformerFor(
+                kind, (Class) LIST_TYPES.get(kind), new OperationContext().withNamespace(namespace), 0);
+        informer.addIndexers(ImmutableMap.of(APP_INDEX, (Function<T, List<String>>) ResourceCache::appLabel));
+        informer.run();
+        awaitSynced(informer, kind);
+        return informer;
+    }
+
+    private void awaitSynced(SharedIndexInformer<?> informer, Class<?> kind) {
+        long deadline = System.currentTimeMillis() + SYNC_TIMEOUT_MILLIS;
+        try {
+            while (!informer.hasSynced()) {
+                if (System.currentTimeMillis() > deadline)
+                    throw new K8sClusterTimeoutException("Timed out syncing cache of "+ kind.getSimpleName() +" in namespace "+ namespace);
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            throw new K8sClusterException(e);
+        }
+    }
+
+    private static List<String> appLabel(HasMetadata resource) {
+        Map<String, String> labels = resource.getMetadata().getLabels();
+        String app = labels != null ? labels.get("app") : null;
+        return app != null ? Collections.singletonList(app) : Collections.emptyList();
+    }
+}
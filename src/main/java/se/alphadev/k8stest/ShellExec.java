@@ -1,55 +1,225 @@
 package se.alphadev.k8stest;
 
-import com.google.common.base.Strings;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
-import org.apache.commons.io.IOUtils;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Runs a command, without a shell, streaming its output line by line to SLF4J and keeping the last lines
+ * of stdout and stderr. A command running past its timeout is killed, with the processes it started.
+ */
+@Slf4j
 public class ShellExec {
 
-    static Process run(String cmd) {
-        return ShellExec.run(cmd, null);
+    private static final int MAX_CAPTURED_LINES = 1000;
+    private static final long DRAIN_MILLIS = 10_000;
+    private static final long KILLED_DRAIN_MILLIS = 1_000;
+
+    private final List<String> argv;
+    private final String name;
+    private Map<String, String> env;
+    private Duration timeout = Duration.ofMinutes(5);
+    private boolean verbose;
+
+    private ShellExec(List<String> argv) {
+        this.argv = argv;
+        this.name = Paths.get(argv.get(0)).getFileName().toString();
     }
 
-    static Process run(String cmd, Map<String,String> env) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("bash", "-c", cmd);
-            if (env != null) {
-                pb.environment().putAll(env);
-            }
-            return pb.inheritIO().start();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    static ShellExec command(String... argv) {
+        return new ShellExec(Arrays.asList(argv));
+    }
+
+    static ShellExec command(List<String> argv) {
+        return new ShellExec(argv);
+    }
+
+    ShellExec env(Map<String, String> env) {
+        this.env = env;
+        return this;
+    }
+
+    ShellExec timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Log output lines at info, instead of debug.
+     */
+    ShellExec verbose() {
+        this.verbose = true;
+        return this;
+    }
+
+    /**
+     * Run the command and wait for it to exit.
+     * @return result of the command
+     * @throws K8sClusterException if the command fails to start, exits with non zero, or times out,
+     * with a {@link K8sClusterTimeoutException}
+     */
+    Result run() {
+        Result result = execute();
+        if (result.isTimedOut())
+            throw new K8sClusterTimeoutException(name +" timed out after "+ timeout.getSeconds() +" s: "+ argv +"\n"+ result.getStderr());
+        if (result.getExitCode() != 0)
+            throw new K8sClusterException(name +" exited with "+ result.getExitCode() +": "+ argv +"\n"+ result.getStderr());
+        return result;
     }
 
-    static String runAndGetOutput(String cmd) {
-        return runAndGetOutput(cmd, null);
+    /**
+     * Run the command and wait for it to exit, whatever the exit code.
+     * @throws K8sClusterException if the command fails to start, or the calling thread is interrupted
+     */
+    Result execute() {
+        CompletableFuture<Result> result = start();
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new K8sClusterException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof K8sClusterException ? (K8sClusterException) e.getCause() : new K8sClusterException(e.getCause());
+        }
     }
 
-    static String runAndGetOutput(String cmd, Map<String,String> env) {
+    /**
+     * Start the command. Cancelling the returned future kills the command.
+     */
+    CompletableFuture<Result> start() {
+        Process process;
         try {
-            ProcessBuilder pb = new ProcessBuilder("bash", "-c", cmd);
+            ProcessBuilder pb = new ProcessBuilder(argv);
             if (env != null) {
                 pb.environment().putAll(env);
             }
-            return captureStdOut(pb.start());
+            process = pb.start();
+            process.getOutputStream().close();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new K8sClusterException(e);
         }
+        Logger output = LoggerFactory.getLogger(ShellExec.class.getName() +"."+ name);
+        Consumer<String> logLine = verbose ? output::info : output::debug;
+        Pump stdout = new Pump(process.getInputStream(), logLine, name +"-out");
+        Pump stderr = new Pump(process.getErrorStream(), logLine, name +"-err");
+
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                boolean exited = process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
+                if (!exited) {
+                    log.warn("{} timed out after {} s, kill it", argv, timeout.getSeconds());
+                    killTree(process);
+                }
+                // Bounded, as processes started by the command may keep the streams open
+                long deadline = System.currentTimeMillis() + (exited ? DRAIN_MILLIS : KILLED_DRAIN_MILLIS);
+                stdout.join(Math.max(1, deadline - System.currentTimeMillis()));
+                stderr.join(Math.max(1, deadline - System.currentTimeMillis()));
+                result.complete(new Result(exited ? process.exitValue() : -1, !exited, stdout.lines(), stderr.lines()));
+            } catch (InterruptedException e) {
+                killTree(process);
+                result.completeExceptionally(e);
+            }
+        }, "shell-exec-"+ name);
+        waiter.setDaemon(true);
+        waiter.start();
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                killTree(process);
+            }
+        });
+        return result;
     }
 
-    protected static String captureStdOut(Process process) throws IOException {
-        return IOUtils.readLines(process.getInputStream(), Charset.defaultCharset()).stream()
-            .reduce((line1, line2) -> Strings.isNullOrEmpty(line2) ? line1 : line1 +"\n"+ line2)
-                .orElse("");
+    /**
+     * Kill the process and its descendants. Descendants are only known on Java 9 and later.
+     */
+    private static void killTree(Process process) {
+        try {
+            Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+            Method destroyForcibly = processHandle.getMethod("destroyForcibly");
+            Object handle = Process.class.getMethod("toHandle").invoke(process);
+            ((Stream<?>) processHandle.getMethod("descendants").invoke(handle)).forEach(d -> {
+                try {
+                    destroyForcibly.invoke(d);
+                } catch (ReflectiveOperationException e) {
+                    log.debug("Unable to kill {}", d, e);
+                }
+            });
+        } catch (ReflectiveOperationException e) {
+            log.debug("Unable to kill descendants of process", e);
+        }
+        process.destroyForcibly();
     }
 
-    protected static String captureStdErr(Process process) throws IOException {
-        return IOUtils.readLines(process.getErrorStream(), Charset.defaultCharset()).stream()
-            .reduce((line1, line2) -> Strings.isNullOrEmpty(line2) ? line1 : line1 +"\n"+ line2)
-                .orElse("");
+    @Value
+    static class Result {
+        int exitCode;
+        boolean timedOut;
+        String stdout;
+        String stderr;
     }
 
+    /**
+     * Reads lines from a stream on a thread of its own, keeping the last lines.
+     */
+    private static class Pump extends Thread {
+
+        private final InputStream in;
+        private final Consumer<String> onLine;
+        private final Deque<String> lines = new ArrayDeque<>();
+
+        Pump(InputStream in, Consumer<String> onLine, String name) {
+            super("shell-exec-"+ name);
+            this.in = in;
+            this.onLine = onLine;
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    onLine.accept(line);
+                    synchronized (lines) {
+                        if (lines.size() == MAX_CAPTURED_LINES) {
+                            lines.removeFirst();
+                        }
+                        lines.addLast(line);
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("Output of process closed", e);
+            }
+        }
+
+        String lines() {
+            synchronized (lines) {
+                return String.join("\n", lines);
+            }
+        }
+    }
 }
@@ -0,0 +1,44 @@
+package se.alphadev.k8stest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.Hashing;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hash of the spec of a resource, as applied, kept in an annotation on the resource.
+ * Lets an apply be skipped when the live resource was applied from the same spec.
+ */
+class SpecHash {
+
+    static final String ANNOTATION = "k8s-test/spec-hash";
+
+    private SpecHash() {}
+
+    static String of(HasMetadata resource) {
+        Map<String, String> annotations = resource.getMetadata().getAnnotations();
+        String stamped = annotations != null ? annotations.remove(ANNOTATION) : null;
+        try {
+            return Hashing.sha256().hashString(Serialization.asJson(resource), UTF_8).toString();
+        } finally {
+            if (stamped != null) {
+                annotations.put(ANNOTATION, stamped);
+            }
+        }
+    }
+
+    static void stamp(HasMetadata resource, String hash) {
+        if (resource.getMetadata().getAnnotations() == null) {
+            resource.getMetadata().setAnnotations(new HashMap<>());
+        }
+        resource.getMetadata().getAnnotations().put(ANNOTATION, hash);
+    }
+
+    static boolean isStamped(HasMetadata resource, String hash) {
+        Map<String, String> annotations = resource != null ? resource.getMetadata().getAnnotations() : null;
+        return annotations != null && hash.equals(annotations.get(ANNOTATION));
+    }
+}
@@ -1,15 +1,24 @@
 package se.alphadev.k8stest;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.copy;
+import static java.nio.file.Files.readAllBytes;
 import static se.alphadev.k8stest.K8sCluster.RESOURCES_DIR;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Properties;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-class Utils {
+public class Utils {
+
+    private Utils() {
+    }
 
     static Path copyToResourcesdDir(String sourcePath, String destName) {
         return copyToResourcesdDir(sourcePath, destName, false);
@@ -17,10 +26,7 @@ class Utils {
 
     static Path copyToResourcesdDir(String sourcePath, String destName, boolean executable) {
         try {
-            Path src = Paths.get(sourcePath);
-            if (!src.toFile().exists() ) {
-                src = Paths.get(ClassLoader.getSystemClassLoader().getResource(sourcePath).toURI());
-            }
+            Path src = resolve(sourcePath);
             Path dest = Paths.get(RESOURCES_DIR + destName);
 
             log.info("Copy {} to {}", src, dest);
@@ -33,4 +39,39 @@ class Utils {
             throw new K8sClusterException(e);
         }
     }
+
+    /**
+     * Read a file, or if there is no such file, a resource on the classpath.
+     */
+    static String readToString(String sourcePath) {
+        try {
+            return new String(readAllBytes(resolve(sourcePath)), UTF_8);
+        } catch (Exception e) {
+            throw new K8sClusterException(e);
+        }
+    }
+
+    /**
+     * @return the property from system properties, or else junit-platform.properties, or null if not set
+     */
+    public static String testProperty(String name) {
+        Properties properties = new Properties();
+        try (InputStream in = Utils.class.getClassLoader().getResourceAsStream("junit-platform.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            log.debug("Unable to read junit-platform.properties", e);
+        }
+        properties.putAll(System.getProperties());
+        return properties.getProperty(name);
+    }
+
+    private static Path resolve(String sourcePath) throws URISyntaxException {
+        Path src = Paths.get(sourcePath);
+        if (!src.toFile().exists() ) {
+            src = Paths.get(Utils.class.getClassLoader().getResource(sourcePath).toURI());
+        }
+        return src;
+    }
 }
@@ -0,0 +1,71 @@
+package se.alphadev.k8stest.junit.extension;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
+import se.alphadev.k8stest.K8sCluster;
+import se.alphadev.k8stest.Utils;
+
+/**
+ * Connects the default local cluster in the background, installing k3d and creating the cluster
+ * if needed, while tests are discovered. Enabled with {@code k8s-test.warmup=true} as system property
+ * or in junit-platform.properties.
+ */
+@Slf4j
+class ClusterWarmup {
+
+    static final String ENABLED_PROPERTY = "k8s-test.warmup";
+
+    private static CompletableFuture<K8sCluster> warmup;
+
+    private ClusterWarmup() {
+    }
+
+    static synchronized void start() {
+        if (warmup != null || !isEnabled())
+            return;
+        log.info("Warm up local cluster");
+        K8sCluster cluster = K8sCluster.builder().build();
+        warmup = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                warmup.complete(cluster.connect());
+            } catch (Throwable e) {
+                warmup.completeExceptionally(e);
+            }
+        }, "k8s-test-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Wait for the warm up to finish.
+     * @return the connected cluster, or empty if not warmed up. A failed warm up is logged, leaving the
+     * test cluster to connect on its own.
+     */
+    static Optional<K8sCluster> await() {
+        CompletableFuture<K8sCluster> started;
+        synchronized (ClusterWarmup.class) {
+            started = warmup;
+        }
+        if (started == null)
+            return Optional.empty();
+        try {
+            return Optional.of(started.join());
+        } catch (RuntimeException e) {
+            log.warn("Warm up of local cluster failed, {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    static synchronized void stop() {
+        if (warmup == null)
+            return;
+        warmup.thenAccept(K8sCluster::disconnect);
+        warmup = null;
+    }
+
+    private static boolean isEnabled() {
+        return Boolean.parseBoolean(Utils.testProperty(ENABLED_PROPERTY));
+    }
+}
@@ -0,0 +1,26 @@
+package se.alphadev.k8stest.junit.extension;
+
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestPlan;
+
+/**
+ * Starts the cluster warm up when the launcher loads its listeners, before tests are discovered,
+ * and disconnects the warmed up cluster when the test run is finished. Registered as a service,
+ * and does nothing unless warm up is enabled.
+ */
+public class ClusterWarmupListener implements TestExecutionListener {
+
+    public ClusterWarmupListener() {
+        ClusterWarmup.start();
+    }
+
+    @Override
+    public void testPlanExecutionStarted(TestPlan testPlan) {
+        ClusterWarmup.start();
+    }
+
+    @Override
+    public void testPlanExecutionFinished(TestPlan testPlan) {
+        ClusterWarmup.stop();
+    }
+}
@@ -1,7 +1,12 @@
 package se.alphadev.k8stest.junit.extension;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.Predicate;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.extension.AfterAllCallback;
@@ -18,6 +23,8 @@ public class K8sExtension implements TestInstancePostProcessor, AfterAllCallback
 
     private static final Namespace STORE_NAMESPACE = Namespace.create(K8sExtension.class);
     private static final String TEST_CLUSTER = "testCluster";
+    private static final String TEST_CLUSTERS = "testClusters";
+    private static final String SHARED_CONNECTION = "sharedConnection:";
 
     @Override
     public void postProcessTestInstance(final Object testInstance, final ExtensionContext context) {
@@ -28,6 +35,16 @@ public class K8sExtension implements TestInstancePostProcessor, AfterAllCallback
 
         ExtensionContext.Store store = context.getStore(STORE_NAMESPACE);
         store.put(TEST_CLUSTER, cluster);
+        testClusters(store).add(cluster);
+    }
+
+    /**
+     * @return the cluster handles of the test instances of the class, one per test with a test instance per method
+     */
+    @SuppressWarnings("unchecked")
+    private static Set<K8sCluster> testClusters(ExtensionContext.Store store) {
+        return store.getOrComputeIfAbsent(TEST_CLUSTERS,
+                key -> Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>())), Set.class);
     }
 
     protected K8sCluster setupK8sCluster(final Object testInstance, final ExtensionContext context) {
@@ -36,9 +53,14 @@ public class K8sExtension implements TestInstancePostProcessor, AfterAllCallback
             if (!annotatedFields.isEmpty()) {
                 for (Field field : annotatedFields) {
                     field.setAccessible(true);
+                    if (shareCluster(context)) {
+                        return setupSharedK8sCluster(testInstance, field, context);
+                    }
                     K8sCluster cluster = (K8sCluster) field.get(testInstance);
-                    cluster.setup();
-                    return cluster;
+                    return setup(cluster, () -> {
+                        ClusterWarmup.await();
+                        cluster.setup();
+                    }, context);
                 }
             }
             throw new ExtensionConfigurationException("");
@@ -47,12 +69,84 @@ public class K8sExtension implements TestInstancePostProcessor, AfterAllCallback
         }
     }
 
+    /**
+     * Inject the cluster already set up for the test class, or set up the test namespace
+     * of the injected cluster using the connection shared in the root store. The warmed up
+     * cluster is shared when it is the same cluster, connected with the same settings. Else the
+     * warm up has only got the cluster running, and the injected cluster connects on its own.
+     */
+    private K8sCluster setupSharedK8sCluster(final Object testInstance, Field field, final ExtensionContext context) throws IllegalAccessException {
+        K8sCluster classCluster = context.getStore(STORE_NAMESPACE).get(TEST_CLUSTER, K8sCluster.class);
+        if (classCluster != null) {
+            field.set(testInstance, classCluster);
+            return classCluster;
+        }
+
+        K8sCluster cluster = (K8sCluster) field.get(testInstance);
+        if (cluster.isRecording())
+            throw new ExtensionConfigurationException("Recording is per test class, and not supported with shareCluster");
+        return setup(cluster, () -> {
+            Optional<K8sCluster> warm = ClusterWarmup.await();
+            SharedConnection connection = context.getRoot().getStore(STORE_NAMESPACE).getOrComputeIfAbsent(
+                    SHARED_CONNECTION + cluster.clusterKey(),
+                    key -> new SharedConnection(warm.filter(cluster::hasConnectionSettingsOf).orElse(cluster)),
+                    SharedConnection.class);
+            cluster.setup(connection.cluster());
+        }, context);
+    }
+
+    /**
+     * Set up the cluster now, or on first use if the test class sets up lazily.
+     */
+    private static K8sCluster setup(K8sCluster cluster, Runnable setup, final ExtensionContext context) {
+        if (lazySetup(context)) {
+            return cluster.setupLazily(setup);
+        }
+        setup.run();
+        return cluster;
+    }
+
+    private static boolean lazySetup(final ExtensionContext context) {
+        return AnnotationSupport.findAnnotation(context.getRequiredTestClass(), K8sTest.class)
+                .map(K8sTest::lazySetup)
+                .orElse(false);
+    }
+
+    private static boolean shareCluster(final ExtensionContext context) {
+        return AnnotationSupport.findAnnotation(context.getRequiredTestClass(), K8sTest.class)
+                .map(K8sTest::shareCluster)
+                .orElse(false);
+    }
+
+    /**
+     * Tear down every cluster handle of the test class, and disconnect those not sharing a connection.
+     */
     @Override
     public void afterAll(ExtensionContext context) throws Exception {
-        ExtensionContext.Store store = context.getStore(STORE_NAMESPACE);
-        K8sCluster cluster = store.get(TEST_CLUSTER, K8sCluster.class);
-        if (cluster != null)
-            cluster.tearDown();
+        List<K8sCluster> clusters;
+        Set<K8sCluster> testClusters = testClusters(context.getStore(STORE_NAMESPACE));
+        synchronized (testClusters) {
+            clusters = new ArrayList<>(testClusters);
+            testClusters.clear();
+        }
+        RuntimeException failure = null;
+        for (K8sCluster cluster : clusters) {
+            try {
+                cluster.tearDown();
+                if (!shareCluster(context)) {
+                    cluster.disconnect();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Unable to tear down cluster {}", cluster.clusterKey(), e);
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null)
+            throw failure;
     }
 
     private List<Field> findK8sTestClusterAnnotatedFields(Class<?> testClass) {
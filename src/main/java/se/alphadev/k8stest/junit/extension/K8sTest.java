@@ -13,4 +13,18 @@ import org.junit.jupiter.api.extension.ExtendWith;
 @ExtendWith(K8sExtension.class)
 public @interface K8sTest {
 
+    /**
+     * Share one connected cluster, and its client, between all test classes in the test run
+     * that connect to the same cluster. The test namespace is set up once per test class,
+     * and the same cluster handle is injected into every test instance of the class.
+     */
+    boolean shareCluster() default false;
+
+    /**
+     * Set up the cluster on first use, like creating or reading resources, instead of when the test
+     * instance is created. Test classes, or tests, that never use the cluster don't connect to it,
+     * and nothing is torn down.
+     */
+    boolean lazySetup() default false;
+
 }
@@ -0,0 +1,29 @@
+package se.alphadev.k8stest.junit.extension;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import se.alphadev.k8stest.K8sCluster;
+
+/**
+ * A connected cluster kept in the root store, shared by all test classes in a test run.
+ * Disconnected when the test run is finished.
+ */
+@Slf4j
+class SharedConnection implements CloseableResource {
+
+    private final K8sCluster cluster;
+
+    SharedConnection(K8sCluster cluster) {
+        this.cluster = cluster.connect();
+    }
+
+    K8sCluster cluster() {
+        return cluster;
+    }
+
+    @Override
+    public void close() {
+        log.info("Close shared connection to {}", cluster.clusterKey());
+        cluster.disconnect();
+    }
+}
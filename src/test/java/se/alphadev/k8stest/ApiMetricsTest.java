@@ -0,0 +1,106 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.alphadev.k8stest.ApiMetrics.Key;
+
+public class ApiMetricsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test @DisplayName("Key requests by verb, resource kind and namespace")
+    void keys() {
+        assertThat(key("GET", "/api/v1/namespaces/ns/pods/app-1")).isEqualTo(new Key("get", "pods", "ns"));
+        assertThat(key("GET", "/apis/apps/v1/namespaces/ns/deployments?watch=true")).isEqualTo(new Key("watch", "deployments", "ns"));
+        assertThat(key("GET", "/api/v1/namespaces/ns/pods/app-1/log")).isEqualTo(new Key("get", "pods/log", "ns"));
+        assertThat(key("GET", "/api/v1/services")).isEqualTo(new Key("list", "services", ""));
+        assertThat(key("POST", "/api/v1/namespaces")).isEqualTo(new Key("create", "namespaces", ""));
+        assertThat(key("POST", "/api/v1/namespaces", "{\"metadata\":{\"name\":\"ns\"}}")).isEqualTo(new Key("create", "namespaces", "ns"));
+        assertThat(key("DELETE", "/api/v1/namespaces/ns")).isEqualTo(new Key("delete", "namespaces", "ns"));
+    }
+
+    @Test @DisplayName("Collect metrics of the requests of a test, and write them on tear down")
+    void collectAndWrite() throws Exception {
+        //given
+        K8sCluster cluster = K8sCluster.builder().mock().uniqueNamespace(true).apiMetrics(dir).build();
+
+        //when
+        cluster.setup();
+        cluster.createDeployment("app", "nginx").get(10, TimeUnit.SECONDS);
+        cluster.tearDown();
+        cluster.disconnect();
+
+        //then
+        List<JsonNode> written = written(cluster.namespace());
+        assertThat(written)
+                .extracting(e -> e.get("verb").asText(), e -> e.get("kind").asText())
+                .contains(tuple("create", "namespaces"), tuple("create", "deployments"), tuple("delete", "namespaces"));
+        assertThat(written)
+                .filteredOn(e -> e.get("verb").asText().equals("create") && e.get("kind").asText().equals("deployments"))
+                .allSatisfy(e -> {
+                    assertThat(e.get("errors").asLong()).isZero();
+                    assertThat(e.get("bytesSent").asLong()).isPositive();
+                    assertThat(e.get("bytesReceived").asLong()).isPositive();
+                    assertThat(e.get("maxMillis").asDouble()).isGreaterThanOrEqualTo(e.get("p50Millis").asDouble());
+                });
+        assertThat(cluster.apiMetrics().snapshot(cluster.namespace())).isEmpty();
+    }
+
+    @Test @DisplayName("Report each lease of a namespace reused under the same name on its own")
+    void resetOnTearDown() throws Exception {
+        //given
+        K8sCluster cluster = K8sCluster.builder().mock().testNamespace("metrics").apiMetrics(dir).build();
+        cluster.setup();
+        cluster.createDeployment("app", "nginx").get(10, TimeUnit.SECONDS);
+        cluster.tearDown();
+        List<JsonNode> firstLease = written("metrics");
+
+        //when
+        cluster.setup();
+        cluster.tearDown();
+        cluster.disconnect();
+
+        //then
+        List<JsonNode> secondLease = written("metrics");
+        assertThat(firstLease).extracting(e -> e.get("verb").asText(), e -> e.get("kind").asText())
+                .contains(tuple("create", "deployments"));
+        assertThat(secondLease).extracting(e -> e.get("verb").asText(), e -> e.get("kind").asText())
+                .doesNotContain(tuple("create", "deployments"));
+        assertThat(namespaceCreations(secondLease)).isPositive().isEqualTo(namespaceCreations(firstLease));
+    }
+
+    private static long namespaceCreations(List<JsonNode> entries) {
+        return entries.stream()
+                .filter(e -> e.get("verb").asText().equals("create") && e.get("kind").asText().equals("namespaces"))
+                .mapToLong(e -> e.get("count").asLong())
+                .sum();
+    }
+
+    private List<JsonNode> written(String namespace) throws Exception {
+        return ImmutableList.copyOf(Serialization.jsonMapper().readTree(dir.resolve(namespace +".json").toFile()));
+    }
+
+    private static Key key(String method, String path) {
+        return key(method, path, "{}");
+    }
+
+    private static Key key(String method, String path, String body) {
+        return ApiMetrics.key(new Request.Builder()
+                .url("https://cluster"+ path)
+                .method(method, method.equals("GET") || method.equals("DELETE") ? null : RequestBody.create(null, body))
+                .build());
+    }
+}
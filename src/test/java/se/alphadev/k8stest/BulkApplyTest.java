@@ -0,0 +1,44 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.NamespaceBuilder;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class BulkApplyTest {
+
+    @Test @DisplayName("Apply resources in dependency order")
+    void applyInDependencyOrder() throws Exception {
+        //given
+        List<String> appliedKinds = new CopyOnWriteArrayList<>();
+        BulkApply bulkApply = new BulkApply(
+                r -> { appliedKinds.add(r.getKind()); return r; },
+                K8sExecutors.defaultExecutor(), 2);
+
+        List<HasMetadata> resources = Arrays.asList(
+                new DeploymentBuilder().withNewMetadata().withName("app").endMetadata().build(),
+                new ServiceBuilder().withNewMetadata().withName("app-svc").endMetadata().build(),
+                new ConfigMapBuilder().withNewMetadata().withName("app-config").endMetadata().build(),
+                new ConfigMapBuilder().withNewMetadata().withName("app-config-2").endMetadata().build(),
+                new NamespaceBuilder().withNewMetadata().withName("app-ns").endMetadata().build());
+
+        //when
+        List<HasMetadata> applied = bulkApply.apply(resources);
+
+        //then
+        assertThat(appliedKinds)
+            .containsExactly("Namespace", "ConfigMap", "ConfigMap", "Service", "Deployment");
+        assertThat(applied.stream().map(r -> r.getMetadata().getName()).collect(Collectors.toList()))
+            .containsExactly("app", "app-svc", "app-config", "app-config-2", "app-ns");
+    }
+
+}
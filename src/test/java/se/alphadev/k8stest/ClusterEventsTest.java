@@ -0,0 +1,103 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ClusterEventsTest {
+
+    private static final String EVENT = "se.alphadev.k8stest.ClusterOperation";
+
+    @TempDir
+    Path dir;
+
+    @Test @DisplayName("Record set up, creates and tear down of a cluster as flight recorder events")
+    void recordClusterOperations() throws Exception {
+        //given
+        K8sCluster cluster = K8sCluster.builder().mock().uniqueNamespace(true).build();
+
+        //when
+        List<RecordedEvent> events = record(() -> {
+            cluster.setup();
+            cluster.createDeployment("app", "nginx").get(10, TimeUnit.SECONDS);
+            cluster.tearDown();
+            cluster.disconnect();
+        });
+
+        //then
+        assertThat(events)
+                .extracting(e -> e.getString("operation"), e -> e.getString("outcome"))
+                .contains(
+                        tuple("connect", "success"),
+                        tuple("createNamespace", "success"),
+                        tuple("createConfigMap", "success"),
+                        tuple("createDeployment", "success"),
+                        tuple("tearDown", "success"));
+        assertThat(events).filteredOn(e -> "createDeployment".equals(e.getString("operation")))
+                .extracting(e -> e.getString("kind"), e -> e.getString("namespace"), e -> e.getString("name"))
+                .containsExactly(tuple("Deployment", cluster.namespace(), "app"));
+    }
+
+    @Test @DisplayName("Record a failed operation with its error")
+    void recordFailure() throws Exception {
+        //when
+        List<RecordedEvent> events = record(() -> assertThatThrownBy(() ->
+                ClusterEvents.record("createService", "Service", "ns", "app", () -> {
+                    throw new K8sClusterException("refused");
+                })));
+
+        //then
+        assertThat(events)
+                .extracting(e -> e.getString("outcome"), e -> e.getString("error"))
+                .containsExactly(tuple("failure", "se.alphadev.k8stest.K8sClusterException: refused"));
+    }
+
+    @Test @DisplayName("Record operations timing out, like waiting for readiness or a command, as timeouts")
+    void recordTimeout() throws Exception {
+        //when
+        List<RecordedEvent> events = record(() -> {
+            CompletableFuture<Object> readiness = new CompletableFuture<>();
+            CompletableFuture<Object> created = ClusterEvents.recordAsync("createDeployment", "Deployment", "ns", "app", () -> readiness);
+            readiness.completeExceptionally(new K8sClusterTimeoutException("Timed out after 60s waiting for Deployment/app to be ready"));
+            assertThatThrownBy(created::join);
+            assertThatThrownBy(() -> ClusterEvents.record("installK3d", "k3d", null, "v3.4.0", () -> {
+                throw new K8sClusterException("Unable to download and install k3d", new K8sClusterTimeoutException("install.sh timed out after 45 s"));
+            }));
+        });
+
+        //then
+        assertThat(events)
+                .extracting(e -> e.getString("operation"), e -> e.getString("outcome"))
+                .containsExactlyInAnyOrder(tuple("createDeployment", "timeout"), tuple("installK3d", "timeout"));
+    }
+
+    private List<RecordedEvent> record(ThrowingRunnable operations) throws Exception {
+        Path file = dir.resolve("operations.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(EVENT);
+            recording.start();
+            operations.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(e -> EVENT.equals(e.getEventType().getName()))
+                .collect(Collectors.toList());
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
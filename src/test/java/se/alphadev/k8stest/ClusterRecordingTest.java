@@ -0,0 +1,114 @@
+package se.alphadev.k8stest;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import io.fabric8.kubernetes.client.utils.Serialization;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.BufferedSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.alphadev.k8stest.ClusterRecording.Exchange;
+import se.alphadev.k8stest.ClusterRecording.Mode;
+import se.alphadev.k8stest.ClusterRecording.WatchEvent;
+
+public class ClusterRecordingTest {
+
+    private static final String URL = "http://replay.k8s-test.invalid";
+
+    @TempDir
+    Path dir;
+
+    @Test @DisplayName("Replay recorded responses without a server, in another namespace")
+    void recordAndReplay() throws Exception {
+        //given
+        Path file = dir.resolve("recording.json.gz");
+        ClusterRecording recording = new ClusterRecording(file, Mode.RECORD, () -> "ns-a");
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("{\"metadata\":{\"name\":\"p\",\"namespace\":\"ns-a\"}}"));
+            get(client(recording), server.url("/api/v1/namespaces/ns-a/pods/p").toString()).close();
+        }
+        recording.close();
+
+        //when
+        ClusterRecording replay = new ClusterRecording(file, Mode.REPLAY, () -> "ns-b");
+        try (Response response = get(client(replay), URL +"/api/v1/namespaces/ns-b/pods/p")) {
+
+            //then
+            assertThat(response.code()).isEqualTo(200);
+            assertThat(response.body().string()).isEqualTo("{\"metadata\":{\"name\":\"p\",\"namespace\":\"ns-b\"}}");
+        }
+        assertThat(get(client(replay), URL +"/api/v1/namespaces/ns-b/pods/q").code()).isEqualTo(404);
+    }
+
+    @Test @DisplayName("Replay a watch event once as many requests are served as when it was recorded")
+    void replayWatchEvents() throws Exception {
+        //given
+        Path file = dir.resolve("recording.json.gz");
+        write(file,
+                new Exchange("GET /api/v1/namespaces/${namespace}/pods?watch=true", 200, null, true, Arrays.asList(
+                        new WatchEvent(0, "{\"type\":\"ADDED\"}"),
+                        new WatchEvent(1, "{\"type\":\"MODIFIED\"}"))),
+                new Exchange("POST /api/v1/namespaces/${namespace}/pods", 201, "{}", false, null));
+        ClusterRecording replay = new ClusterRecording(file, Mode.REPLAY, () -> "ns");
+        OkHttpClient client = client(replay);
+
+        //when
+        Response watch = get(client, URL +"/api/v1/namespaces/ns/pods?watch=true&resourceVersion=1");
+        BufferedSource events = watch.body().source();
+        String added = events.readUtf8LineStrict();
+        events.timeout().timeout(200, MILLISECONDS);
+        Throwable beforeCreate = catchThrowable(() -> events.request(1));
+        events.timeout().clearTimeout();
+        client.newCall(new Request.Builder().url(URL +"/api/v1/namespaces/ns/pods")
+                .post(RequestBody.create(null, "{}")).build()).execute().close();
+        String modified = events.readUtf8LineStrict();
+        replay.close();
+
+        //then
+        assertThat(added).isEqualTo("{\"type\":\"ADDED\"}");
+        assertThat(beforeCreate).isInstanceOf(InterruptedIOException.class);
+        assertThat(modified).isEqualTo("{\"type\":\"MODIFIED\"}");
+        assertThat(events.exhausted()).isTrue();
+    }
+
+    @Test @DisplayName("Fail to record a cluster sharing a connection, as the recording would hold other test classes")
+    void failWithSharedConnection() {
+        //given
+        K8sCluster cluster = K8sCluster.builder().mock().recording(dir.resolve("recording.json.gz")).build();
+
+        //when
+        Throwable failure = catchThrowable(() -> cluster.setup(cluster));
+
+        //then
+        assertThat(failure).isInstanceOf(K8sClusterException.class).hasMessageContaining("not supported with a shared connection");
+        assertThat(dir.resolve("recording.json.gz")).doesNotExist();
+    }
+
+    private static OkHttpClient client(ClusterRecording recording) {
+        return new OkHttpClient.Builder().addInterceptor(recording.interceptor()).build();
+    }
+
+    private static Response get(OkHttpClient client, String url) throws Exception {
+        return client.newCall(new Request.Builder().url(url).build()).execute();
+    }
+
+    private static void write(Path file, Exchange... exchanges) throws Exception {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            Serialization.jsonMapper().writeValue(out, Arrays.asList(exchanges));
+        }
+    }
+}
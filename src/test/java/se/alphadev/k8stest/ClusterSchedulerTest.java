@@ -0,0 +1,44 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ClusterSchedulerTest {
+
+    @Test @DisplayName("Assign handles to the least loaded cluster")
+    void assignLeastLoaded() {
+        //given
+        ClusterScheduler scheduler = new ClusterScheduler();
+
+        //when
+        List<Integer> assigned = Arrays.asList(
+                scheduler.assign(3, null),
+                scheduler.assign(3, null),
+                scheduler.assign(3, null));
+        scheduler.release(1);
+        int reassigned = scheduler.assign(3, null);
+
+        //then
+        assertThat(assigned).containsExactlyInAnyOrder(0, 1, 2);
+        assertThat(reassigned).isEqualTo(1);
+    }
+
+    @Test @DisplayName("Assign handles with the same shard key to the same cluster")
+    void assignByShardKey() {
+        //given
+        ClusterScheduler scheduler = new ClusterScheduler();
+
+        //when
+        int first = scheduler.assign(4, "se.alphadev.SomeTest");
+        int second = scheduler.assign(4, "se.alphadev.SomeTest");
+
+        //then
+        assertThat(first).isEqualTo(second);
+        assertThat(ClusterScheduler.clusterName(0)).isEqualTo("k3s-test-cluster");
+        assertThat(ClusterScheduler.clusterName(2)).isEqualTo("k3s-test-cluster-2");
+    }
+}
@@ -0,0 +1,51 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ConnectionSettingsTest {
+
+    private static final File CONFIG = new File("custom-config");
+
+    @Test @DisplayName("Use the connection of a handle to the same cluster with the same settings")
+    void sameSettings() {
+        //given
+        K8sCluster warm = K8sCluster.builder().config(CONFIG).build();
+        K8sCluster cluster = K8sCluster.builder().config(CONFIG).testNamespace("other").build();
+
+        //then
+        assertThat(cluster.hasConnectionSettingsOf(warm)).isTrue();
+    }
+
+    @Test @DisplayName("Connect on its own when the settings of the connection differ")
+    void otherSettings() {
+        //given
+        K8sCluster warm = K8sCluster.builder().config(CONFIG).build();
+
+        //then
+        assertThat(K8sCluster.builder().config(CONFIG).namespacePool(2).build().hasConnectionSettingsOf(warm)).isFalse();
+        assertThat(K8sCluster.builder().config(CONFIG).apiMetrics().build().hasConnectionSettingsOf(warm)).isFalse();
+        assertThat(K8sCluster.builder().config(CONFIG).http2(false).build().hasConnectionSettingsOf(warm)).isFalse();
+        assertThat(K8sCluster.builder().config(CONFIG).nodePorts(5).build().hasConnectionSettingsOf(warm)).isFalse();
+        assertThat(K8sCluster.builder().config(new File("other-config")).build().hasConnectionSettingsOf(warm)).isFalse();
+        assertThat(K8sCluster.builder().config(CONFIG).recording(Paths.get("target", "recording.json.gz")).build()
+                .hasConnectionSettingsOf(warm)).isFalse();
+    }
+
+    @Test @DisplayName("Connect on its own when the local cluster is shaped by another profile")
+    void otherProfile() {
+        //given
+        K8sCluster warm = K8sCluster.builder().shardKey("warm").build();
+
+        //then
+        assertThat(K8sCluster.builder().shardKey("warm").build().hasConnectionSettingsOf(warm)).isTrue();
+        assertThat(K8sCluster.builder().shardKey("warm").clusterProfile(ClusterProfile.lean()).build()
+                .hasConnectionSettingsOf(warm)).isFalse();
+        assertThat(K8sCluster.builder().shardKey("warm").preloadImages("nginx").build()
+                .hasConnectionSettingsOf(warm)).isFalse();
+    }
+}
@@ -0,0 +1,52 @@
+package se.alphadev.k8stest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.fabric8.kubernetes.client.Config;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CustomClusterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test @DisplayName("Resolve relative certificate and key files against the dir of the kubeconfig")
+    void relativeCertificateFiles() throws Exception {
+        //given
+        Path kubeconfig = dir.resolve("kubeconfig.yaml");
+        Files.write(kubeconfig, String.join("\n",
+                "apiVersion: v1",
+                "kind: Config",
+                "clusters:",
+                "- name: test",
+                "  cluster:",
+                "    server: https://127.0.0.1:6443",
+                "    certificate-authority: certs/ca.crt",
+                "users:",
+                "- name: test",
+                "  user:",
+                "    client-certificate: certs/client.crt",
+                "    client-key: certs/client.key",
+                "contexts:",
+                "- name: test",
+                "  context:",
+                "    cluster: test",
+                "    user: test",
+                "current-context: test").getBytes(UTF_8));
+        CustomCluster cluster = (CustomCluster) K8sCluster.builder().config(kubeconfig.toFile()).build();
+
+        //when
+        Config config = cluster.kubeconfig();
+
+        //then
+        assertThat(config.getMasterUrl()).startsWith("https://127.0.0.1:6443");
+        assertThat(config.getCaCertFile()).isEqualTo(dir.resolve("certs/ca.crt").toString());
+        assertThat(config.getClientCertFile()).isEqualTo(dir.resolve("certs/client.crt").toString());
+        assertThat(config.getClientKeyFile()).isEqualTo(dir.resolve("certs/client.key").toString());
+    }
+}
@@ -0,0 +1,38 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class IdempotentApplyTest {
+
+    @Test @DisplayName("Skip applying an unchanged spec in the kept test namespace of a previous run, and apply a changed spec")
+    void skipUnchangedSpec() throws Exception {
+        //given
+        K8sCluster previousRun = K8sCluster.builder().mock().testNamespace("idempotent").idempotentApply(true).build();
+        previousRun.setup();
+        previousRun.createDeployment("app", "nginx").get(10, TimeUnit.SECONDS);
+        previousRun.client().apps().deployments().inNamespace("idempotent").withName("app")
+                .edit().editMetadata().addToLabels("applied-by", "previous-run").endMetadata().done();
+        previousRun.tearDown();
+        K8sCluster cluster = K8sCluster.builder().mock().testNamespace("idempotent").idempotentApply(true).build();
+
+        try {
+            //when
+            cluster.setup(previousRun);
+            Deployment unchanged = cluster.createDeployment("app", "nginx").get(10, TimeUnit.SECONDS);
+            Deployment changed = cluster.createDeployment("app", "nginx:1.19").get(10, TimeUnit.SECONDS);
+
+            //then
+            assertThat(unchanged.getMetadata().getLabels()).containsEntry("applied-by", "previous-run");
+            assertThat(changed.getMetadata().getLabels()).isNullOrEmpty();
+            assertThat(changed.getSpec().getTemplate().getSpec().getContainers().get(0).getImage()).isEqualTo("nginx:1.19");
+        } finally {
+            cluster.tearDown();
+            previousRun.disconnect();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package se.alphadev.k8stest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ImagePreloaderTest {
+
+    private static final String IMAGE = "nginx:1.19";
+
+    @TempDir
+    Path dir;
+
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+    private final Map<String, String> nodeImageIds = new ConcurrentHashMap<>();
+    private String dockerImageId;
+
+    @Test @DisplayName("Skip an image present on every node, without docker")
+    void skipPresentImage() throws Exception {
+        //given
+        ImagePreloader preloader = preloader();
+        cache(preloader, "sha256:cached");
+        nodeImageIds.put("k3d-test-server-0", "sha256:cached");
+        nodeImageIds.put("k3d-test-agent-0", "sha256:cached");
+
+        //when
+        preloader.preload("test", Collections.singletonList(IMAGE));
+
+        //then
+        assertThat(commands).noneMatch(c -> c.startsWith("docker image") || c.startsWith("docker pull") || c.startsWith("docker save"));
+        assertThat(commands).noneMatch(c -> c.startsWith("k3d"));
+    }
+
+    @Test @DisplayName("Import a cached image, without pulling it")
+    void importCachedImage() throws Exception {
+        //given
+        ImagePreloader preloader = preloader();
+        Path tarball = cache(preloader, "sha256:cached");
+        nodeImageIds.put("k3d-test-server-0", "sha256:cached");
+        nodeImageIds.put("k3d-test-agent-0", "sha256:old");
+
+        //when
+        preloader.preload("test", Collections.singletonList(IMAGE));
+
+        //then
+        assertThat(commands).noneMatch(c -> c.startsWith("docker image") || c.startsWith("docker pull") || c.startsWith("docker save"));
+        assertThat(commands).contains("k3d image import --cluster test "+ tarball);
+    }
+
+    @Test @DisplayName("Pull, save and import an image missing in the cache")
+    void importMissingImage() throws Exception {
+        //given
+        ImagePreloader preloader = preloader();
+
+        //when
+        preloader.preload("test", Collections.singletonList(IMAGE));
+
+        //then
+        Path tarball = preloader.tarball(IMAGE);
+        assertThat(commands).contains("docker pull "+ IMAGE, "k3d image import --cluster test "+ tarball);
+        assertThat(tarball).exists();
+        assertThat(tarball.resolveSibling(tarball.getFileName().toString().replace(".tar", ".id"))).hasContent("sha256:pulled");
+        assertThat(preloader.tarball(IMAGE)).isNotEqualTo(preloader.tarball("nginx/1.19"));
+    }
+
+    private ImagePreloader preloader() {
+        return new ImagePreloader("k3d", K8sExecutors.defaultExecutor(), dir, this::exec);
+    }
+
+    private Path cache(ImagePreloader preloader, String imageId) throws Exception {
+        Path tarball = preloader.tarball(IMAGE);
+        Files.write(tarball, "tarball".getBytes(UTF_8));
+        Files.write(tarball.resolveSibling(tarball.getFileName().toString().replace(".tar", ".id")), imageId.getBytes(UTF_8));
+        return tarball;
+    }
+
+    private String exec(List<String> argv) {
+        String command = String.join(" ", argv);
+        commands.add(command);
+        if (command.startsWith("docker ps"))
+            return "k3d-test-server-0 server\nk3d-test-agent-0 agent\nk3d-test-serverlb loadbalancer";
+        if (command.startsWith("docker exec")) {
+            String imageId = nodeImageIds.get(argv.get(2));
+            if (imageId == null)
+                throw new K8sClusterException("no such image");
+            return imageId;
+        }
+        if (command.startsWith("docker image inspect")) {
+            if (dockerImageId == null)
+                throw new K8sClusterException("no such image");
+            return dockerImageId;
+        }
+        if (command.startsWith("docker pull")) {
+            dockerImageId = "sha256:pulled";
+            return "";
+        }
+        if (command.startsWith("docker save")) {
+            try {
+                Files.write(Paths.get(argv.get(3)), "tarball".getBytes(UTF_8));
+            } catch (Exception e) {
+                throw new K8sClusterException(e);
+            }
+            return "";
+        }
+        return "";
+    }
+}
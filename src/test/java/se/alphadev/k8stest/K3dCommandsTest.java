@@ -0,0 +1,78 @@
+package se.alphadev.k8stest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static se.alphadev.k8stest.K8sCluster.RESOURCES_DIR;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class K3dCommandsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test @DisplayName("Create cluster with the arguments of the profile")
+    void createClusterFromProfile() throws Exception {
+        //given
+        Path args = dir.resolve("args");
+        Path k3d = dir.resolve("k3d");
+        Files.write(k3d, ("#!/bin/sh\nfor a in \"$@\"; do echo \"$a\" >> "+ args +"; done\n").getBytes(UTF_8));
+        k3d.toFile().setExecutable(true);
+        Files.createDirectories(Paths.get(RESOURCES_DIR));
+
+        ClusterProfile profile = ClusterProfile.builder()
+                .servers(1).agents(0)
+                .disable("traefik").disable("metrics-server")
+                .timeout(Duration.ofSeconds(90))
+                .build();
+
+        //when
+        new K3dCommands(k3d.toString()).createCluster("test-cluster", profile, 31001, 10);
+
+        //then
+        List<String> argv = Files.readAllLines(args, UTF_8);
+        assertThat(argv).startsWith("cluster", "create", "test-cluster", "--servers", "1", "--agents", "0");
+        assertThat(argv).containsSequence("--port", "31001-31010:31001-31010@server[0]");
+        assertThat(argv).containsSequence("--label", "k8s-test.node-ports=31001-31010@server[0]");
+        assertThat(argv).containsSequence("--k3s-server-arg", "--disable=traefik", "--k3s-server-arg", "--disable=metrics-server");
+        assertThat(argv).endsWith("--wait=true", "--timeout", "90s");
+    }
+
+    @Test @DisplayName("Wipe the k3s data dir in tmpfs of a deleted cluster, and before creating the cluster again")
+    void wipeTmpfsDataDir() throws Exception {
+        //given
+        Path k3d = dir.resolve("k3d");
+        Files.write(k3d, "#!/bin/sh\n".getBytes(UTF_8));
+        k3d.toFile().setExecutable(true);
+        Files.createDirectories(Paths.get(RESOURCES_DIR));
+        Path tmpfs = dir.resolve("shm").resolve("k8s-test");
+        Files.createDirectories(tmpfs.resolve("test-cluster").resolve("server").resolve("db"));
+        Files.createDirectories(tmpfs.resolve("test-cluster-2"));
+        K3dCommands k3dCmd = new K3dCommands(k3d.toString(), tmpfs);
+        ClusterProfile profile = ClusterProfile.builder().servers(1).agents(0).tmpfsDataDir(true).build();
+
+        //when
+        k3dCmd.createCluster("test-cluster", profile, 31001, 10);
+        boolean wipedOnCreate = Files.exists(tmpfs.resolve("test-cluster")) && !Files.exists(tmpfs.resolve("test-cluster").resolve("server"));
+        boolean deleted = k3dCmd.deleteTmpfsDataDir("test-cluster");
+
+        //then
+        assertThat(wipedOnCreate).isTrue();
+        assertThat(deleted).isTrue();
+        assertThat(tmpfs.resolve("test-cluster")).doesNotExist();
+        assertThat(tmpfs.resolve("test-cluster-2")).exists();
+    }
+
+    @Test @DisplayName("Parse the k3d version")
+    void parseVersion() {
+        assertThat(K3dCommands.parseVersion("k3d version v3.4.0\nk3s version v1.19.4-k3s1 (default)")).isEqualTo("v3.4.0");
+        assertThat(K3dCommands.parseVersion("")).isEmpty();
+    }
+}
@@ -0,0 +1,45 @@
+package se.alphadev.k8stest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class K3dFingerprintTest {
+
+    @TempDir
+    Path dir;
+
+    @Test @DisplayName("Match the recorded version of an unchanged binary")
+    void matchUnchangedBinary() throws Exception {
+        //given
+        Path k3d = Files.write(dir.resolve("k3d"), "k3d v3.4.0".getBytes(UTF_8));
+        new K3dFingerprint(k3d).record("v3.4.0");
+
+        //then
+        assertThat(new K3dFingerprint(k3d).matches("v3.4.0")).isTrue();
+        assertThat(new K3dFingerprint(k3d).matches("v4.0.0")).isFalse();
+    }
+
+    @Test @DisplayName("Match a touched binary by checksum, but not a replaced one")
+    void matchByChecksum() throws Exception {
+        //given
+        Path k3d = Files.write(dir.resolve("k3d"), "k3d v3.4.0".getBytes(UTF_8));
+        new K3dFingerprint(k3d).record("v3.4.0");
+
+        //when
+        Files.setLastModifiedTime(k3d, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        boolean touchedMatches = new K3dFingerprint(k3d).matches("v3.4.0");
+        Files.write(k3d, "k3d v4.0.0".getBytes(UTF_8));
+        Files.setLastModifiedTime(k3d, FileTime.fromMillis(System.currentTimeMillis() + 120_000));
+
+        //then
+        assertThat(touchedMatches).isTrue();
+        assertThat(new K3dFingerprint(k3d).matches("v3.4.0")).isFalse();
+    }
+}
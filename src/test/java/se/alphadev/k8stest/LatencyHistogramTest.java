@@ -0,0 +1,38 @@
+package se.alphadev.k8stest;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    @Test @DisplayName("Report percentiles within an eighth of the recorded latencies")
+    void percentiles() {
+        //given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        //when
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(MILLISECONDS.toNanos(millis));
+        }
+
+        //then
+        assertThat(histogram.count()).isEqualTo(100);
+        assertThat(histogram.meanMillis()).isCloseTo(50.5, within(0.01));
+        assertThat(histogram.percentileMillis(50)).isBetween(50.0, 50 * 1.125);
+        assertThat(histogram.percentileMillis(99)).isBetween(99.0, 100.0);
+        assertThat(histogram.maxMillis()).isEqualTo(100.0);
+    }
+
+    @Test @DisplayName("Map every latency to a bucket whose upper bound is at or above it")
+    void buckets() {
+        for (long micros = 0; micros < 100_000; micros += 7) {
+            int index = LatencyHistogram.index(micros);
+            assertThat(LatencyHistogram.upperBound(index)).isBetween(micros, micros + micros / 8);
+            assertThat(index).isGreaterThanOrEqualTo(LatencyHistogram.index(Math.max(0, micros - 7)));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LazySetupTest {
+
+    private final K8sCluster cluster = K8sCluster.builder()
+            .config(new File("custom-config"))
+            .build();
+
+    @Test @DisplayName("Skip set up and tear down of a cluster never used")
+    void skipUnused() {
+        //given
+        AtomicInteger setups = new AtomicInteger();
+        cluster.setupLazily(setups::incrementAndGet);
+
+        //when
+        cluster.tearDown();
+
+        //then
+        assertThat(setups).hasValue(0);
+    }
+
+    @Test @DisplayName("Set up once on first use, and keep failing after a failed set up")
+    void setupOnFirstUse() {
+        //given
+        AtomicInteger setups = new AtomicInteger();
+        cluster.setupLazily(() -> {
+            setups.incrementAndGet();
+            throw new K8sClusterException("unreachable");
+        });
+
+        //then
+        assertThatThrownBy(cluster::namespace).hasMessage("unreachable");
+        assertThatThrownBy(cluster::deployments).hasMessageContaining("Lazy set up of cluster failed");
+        assertThat(setups).hasValue(1);
+    }
+
+    @Test @DisplayName("Keep a set up cluster set up when set up lazily again, and tear it down")
+    void setupLazilyWhenSetUp() {
+        //given
+        K8sCluster mock = K8sCluster.builder().mock().uniqueNamespace(true).build();
+        mock.setupLazily(mock::setup);
+        String namespace = mock.namespace();
+
+        //when
+        mock.setupLazily(mock::setup);
+        mock.tearDown();
+
+        //then
+        try {
+            assertThat(mock.client().namespaces().withName(namespace).get()).isNull();
+        } finally {
+            mock.disconnect();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static se.alphadev.k8stest.K8sCluster.RESOURCES_DIR;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LocalK3sClusterTest {
+
+    @Test @DisplayName("Release the lease on the cluster when it fails to be created")
+    void releaseLeaseOnFailedCreate() throws Exception {
+        //given
+        LocalK3sCluster cluster = (LocalK3sCluster) K8sCluster.builder().shardKey("failing").build();
+        cluster.k3dCmd = new K3dCommands() {
+            @Override
+            protected boolean checkK3dInstalled(String version) {
+                return true;
+            }
+
+            @Override
+            protected boolean clusterExists(String clusterName) {
+                return false;
+            }
+
+            @Override
+            protected void createCluster(String clusterName, ClusterProfile profile, int firstNodePort, int nodePorts) {
+                throw new K8sClusterException("Unable to create cluster");
+            }
+        };
+        Path leaseDir = Paths.get(RESOURCES_DIR, "leases", cluster.clusterName());
+        long leases = leases(leaseDir);
+
+        //when
+        assertThatThrownBy(cluster::connect).hasMessageContaining("Unable to create cluster");
+
+        //then
+        assertThat(leases(leaseDir)).isEqualTo(leases);
+        cluster.tearDown();
+    }
+
+    private static long leases(Path leaseDir) throws Exception {
+        if (!Files.isDirectory(leaseDir))
+            return 0;
+        try (Stream<Path> files = Files.list(leaseDir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".lease")).count();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package se.alphadev.k8stest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ManifestTemplateTest {
+
+    @Test @DisplayName("Render placeholders with variables")
+    void render() {
+        ManifestTemplate template = ManifestTemplate.compile(
+                "name: <name>\nimage: <image>\nport: <nodeport>\nother: <unknown> <<name>>");
+
+        String rendered = template.render(ImmutableMap.of("name", "nginx", "image", "nginx:1.19", "nodeport", "31001"));
+
+        assertThat(rendered).isEqualTo("name: nginx\nimage: nginx:1.19\nport: 31001\nother: <unknown> <nginx>");
+    }
+
+    @Test @DisplayName("Compile template again when file is modified")
+    void recompileModifiedFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("pod.yaml");
+        Files.write(file, "name: <name>".getBytes(UTF_8));
+
+        ManifestTemplate template = ManifestTemplate.of(file);
+        assertThat(ManifestTemplate.of(file)).isSameAs(template);
+
+        Files.write(file, "app: <name>".getBytes(UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+
+        assertThat(ManifestTemplate.of(file).render(ImmutableMap.of("name", "nginx"))).isEqualTo("app: nginx");
+    }
+
+}
@@ -0,0 +1,51 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class MockClusterTest {
+
+    private final K8sCluster cluster = K8sCluster.builder()
+            .mock()
+            .uniqueNamespace(true)
+            .build();
+
+    @AfterEach
+    void tearDown() {
+        cluster.tearDown();
+        cluster.disconnect();
+    }
+
+    @Test @DisplayName("Report workloads ready when created in the mock cluster")
+    void workloadsReady() throws Exception {
+        //given
+        cluster.setup();
+
+        //when
+        Deployment deployment = cluster.createDeployment("app", "nginx").get(10, TimeUnit.SECONDS);
+        Pod pod = cluster.createPod("job", "busybox").get(10, TimeUnit.SECONDS);
+
+        //then
+        assertThat(deployment.getStatus().getReadyReplicas()).isEqualTo(1);
+        assertThat(pod.getStatus().getPhase()).isEqualTo("Running");
+        assertThat(cluster.deployments()).containsExactly("app");
+    }
+
+    @Test @DisplayName("Store services in the test namespace of the mock cluster")
+    void services() {
+        //given
+        cluster.setup();
+
+        //when
+        cluster.createService("app", 80, 8080);
+
+        //then
+        assertThat(cluster.client().services().inNamespace(cluster.namespace()).withName("app-svc").get()).isNotNull();
+    }
+}
@@ -0,0 +1,75 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class NamespacePoolTest {
+
+    private final K8sCluster cluster = K8sCluster.builder().mock().build().connect();
+    private final KubernetesClient client = cluster.client();
+    private final NamespacePool pool = new NamespacePool(cluster, "pool", 2);
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+        cluster.disconnect();
+    }
+
+    @Test @DisplayName("Create namespaces when the pool is exhausted, delete released namespaces, and the ready ones on close")
+    void acquireReleaseClose() {
+        //given
+        pool.start();
+        await().until(() -> pooled().size() == 2);
+
+        //when
+        List<String> acquired = Arrays.asList(pool.acquire(), pool.acquire(), pool.acquire());
+
+        //then
+        assertThat(acquired).doesNotHaveDuplicates().allMatch(ns -> ns.startsWith("pool-"));
+        assertThat(acquired).allMatch(ns -> client.configMaps().inNamespace(ns).withName("cluster-config").get() != null);
+        await().until(() -> pooled().size() == 5);
+
+        //when
+        pool.release(acquired.get(0));
+
+        //then
+        await().until(() -> !pooled().contains(acquired.get(0)));
+        assertThat(pooled()).hasSize(4);
+
+        //when
+        pool.close();
+
+        //then
+        await().until(() -> pooled().size() == 2);
+        assertThat(pooled()).containsExactlyInAnyOrderElementsOf(acquired.subList(1, 3));
+    }
+
+    @Test @DisplayName("Delete namespaces released just before close")
+    void releaseBeforeClose() {
+        //given
+        NamespacePool empty = new NamespacePool(cluster, "pool", 0).start();
+        List<String> acquired = IntStream.range(0, 5).mapToObj(i -> empty.acquire()).collect(Collectors.toList());
+
+        //when
+        acquired.forEach(empty::release);
+        empty.close();
+
+        //then
+        assertThat(pooled()).isEmpty();
+    }
+
+    private List<String> pooled() {
+        return client.namespaces().withLabel(NamespacePool.POOL_LABEL, "pool").list().getItems().stream()
+                .map(ns -> ns.getMetadata().getName())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,75 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.SecretBuilder;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class NamespaceResetTest {
+
+    private final K8sCluster cluster = K8sCluster.builder().mock().uniqueNamespace(true).build().setup();
+    private final KubernetesClient client = cluster.client();
+    private final String namespace = cluster.namespace();
+
+    @AfterEach
+    void tearDown() {
+        cluster.tearDown();
+        cluster.disconnect();
+    }
+
+    @Test @DisplayName("Delete the resources of the tests, and keep the namespace and its defaults")
+    void resetPopulatedNamespace() {
+        //given
+        client.apps().deployments().inNamespace(namespace).create(new DeploymentBuilder()
+                .withNewMetadata().withName("app").endMetadata()
+                .withNewSpec().withNewTemplate().withNewSpec().addNewContainer().withName("app").withImage("nginx").endContainer()
+                .endSpec().endTemplate().endSpec()
+                .build());
+        client.pods().inNamespace(namespace).create(new PodBuilder()
+                .withNewMetadata().withName("app").endMetadata()
+                .withNewSpec().addNewContainer().withName("app").withImage("nginx").endContainer().endSpec()
+                .build());
+        client.services().inNamespace(namespace).create(new ServiceBuilder()
+                .withNewMetadata().withName("app").endMetadata()
+                .withNewSpec().addNewPort().withPort(80).endPort().endSpec()
+                .build());
+        client.configMaps().inNamespace(namespace).create(configMap("app-config"));
+        client.configMaps().inNamespace(namespace).create(configMap("kube-root-ca.crt"));
+        client.secrets().inNamespace(namespace).create(new SecretBuilder()
+                .withNewMetadata().withName("app-secret").endMetadata().withType("Opaque").build());
+        client.secrets().inNamespace(namespace).create(new SecretBuilder()
+                .withNewMetadata().withName("default-token").endMetadata().withType("kubernetes.io/service-account-token").build());
+
+        //when
+        new NamespaceReset(client, namespace, K8sExecutors.defaultExecutor()).reset(10);
+
+        //then
+        assertThat(client.namespaces().withName(namespace).get()).isNotNull();
+        assertThat(client.apps().deployments().inNamespace(namespace).list().getItems()).isEmpty();
+        assertThat(client.pods().inNamespace(namespace).list().getItems()).isEmpty();
+        assertThat(client.services().inNamespace(namespace).list().getItems()).isEmpty();
+        assertThat(names(client.configMaps().inNamespace(namespace).list().getItems()))
+                .containsExactlyInAnyOrder("cluster-config", "kube-root-ca.crt");
+        assertThat(names(client.secrets().inNamespace(namespace).list().getItems()))
+                .containsExactly("default-token");
+    }
+
+    private ConfigMap configMap(String name) {
+        return new ConfigMapBuilder().withNewMetadata().withName(name).endMetadata().addToData("key", "value").build();
+    }
+
+    private static List<String> names(List<? extends HasMetadata> resources) {
+        return resources.stream().map(r -> r.getMetadata().getName()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,59 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class NodePortAllocatorTest {
+
+    @Test @DisplayName("Lease distinct ports concurrently")
+    void leaseConcurrently() {
+        //given
+        NodePortAllocator allocator = new NodePortAllocator(31001, 50);
+
+        //when
+        List<Integer> ports = IntStream.range(0, 50)
+                .mapToObj(i -> CompletableFuture.supplyAsync(allocator::lease))
+                .collect(Collectors.toList())
+                .stream().map(CompletableFuture::join)
+                .collect(Collectors.toList());
+
+        //then
+        assertThat(ports).doesNotHaveDuplicates().allMatch(p -> p >= 31001 && p <= 31050);
+        assertThatThrownBy(allocator::lease).isInstanceOf(K8sClusterException.class);
+    }
+
+    @Test @DisplayName("Lease released ports again, but not ports in use")
+    void leaseReleasedPorts() {
+        //given
+        NodePortAllocator allocator = new NodePortAllocator(31001, 3);
+        allocator.setInUse(Arrays.asList(31002, 30000));
+
+        //when
+        int first = allocator.lease();
+        int second = allocator.lease();
+        allocator.release(first);
+
+        //then
+        assertThat(Arrays.asList(first, second)).containsExactly(31001, 31003);
+        assertThat(allocator.lease()).isEqualTo(31001);
+        assertThatThrownBy(allocator::lease).isInstanceOf(K8sClusterException.class);
+    }
+
+    @Test @DisplayName("Parse the range of node ports recorded on a cluster")
+    void parseRange() {
+        assertThat(NodePortAllocator.parseRange(NodePortAllocator.range(31021, 20))).containsExactly(31021, 20);
+        assertThat(NodePortAllocator.parseRange("31001-31001")).containsExactly(31001, 1);
+        assertThat(NodePortAllocator.parseRange("31020-31001")).isNull();
+        assertThat(NodePortAllocator.parseRange("31001-40000")).isNull();
+        assertThat(NodePortAllocator.parseRange("")).isNull();
+        assertThat(NodePortAllocator.parseRange(null)).isNull();
+    }
+}
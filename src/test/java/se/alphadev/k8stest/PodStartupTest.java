@@ -0,0 +1,96 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.EventBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class PodStartupTest {
+
+    @Test @DisplayName("Break down the startup of a ready pod from its conditions and events")
+    void readyPod() {
+        //given
+        Pod pod = new PodBuilder()
+                .withNewMetadata().withName("app-1").withCreationTimestamp("2020-11-20T10:00:00Z").endMetadata()
+                .withNewSpec().withNodeName("agent-0").endSpec()
+                .withNewStatus()
+                    .addNewCondition().withType("PodScheduled").withStatus("True").withLastTransitionTime("2020-11-20T10:00:01Z").endCondition()
+                    .addNewCondition().withType("Ready").withStatus("True").withLastTransitionTime("2020-11-20T10:00:40Z").endCondition()
+                    .addNewContainerStatus().withName("app")
+                        .withNewState().withNewRunning().withStartedAt("2020-11-20T10:00:32Z").endRunning().endState()
+                    .endContainerStatus()
+                .endStatus()
+                .build();
+
+        //when
+        PodStartup startup = PodStartup.of(pod, Arrays.asList(
+                event("app-1", "Pulling", "2020-11-20T10:00:02Z"),
+                event("app-1", "Pulled", "2020-11-20T10:00:30Z"),
+                event("other", "Pulled", "2020-11-20T10:00:50Z")));
+
+        //then
+        assertThat(startup.scheduling()).contains(Duration.ofSeconds(1));
+        assertThat(startup.imagePull()).contains(Duration.ofSeconds(28));
+        assertThat(startup.containerStart()).contains(Duration.ofSeconds(2));
+        assertThat(startup.readiness()).contains(Duration.ofSeconds(8));
+        assertThat(startup.toString()).isEqualTo(
+                "pod app-1: scheduled 1.0s on agent-0, image pull 28.0s, container start 2.0s, ready 8.0s, total 40.0s");
+    }
+
+    @Test @DisplayName("Tell the step a pod is stuck at, and why its containers are waiting")
+    void stuckPod() {
+        //given
+        Pod pod = new PodBuilder()
+                .withNewMetadata().withName("app-1").withCreationTimestamp("2020-11-20T10:00:00Z").endMetadata()
+                .withNewStatus()
+                    .addNewContainerStatus().withName("app")
+                        .withNewState().withNewWaiting().withReason("ImagePullBackOff").endWaiting().endState()
+                    .endContainerStatus()
+                .endStatus()
+                .build();
+
+        //when
+        PodStartup startup = PodStartup.of(pod, Arrays.asList(
+                event("app-1", "Scheduled", "2020-11-20T10:00:01Z"),
+                event("app-1", "Pulling", "2020-11-20T10:00:02Z")));
+
+        //then
+        assertThat(startup.getReady()).isNull();
+        assertThat(startup.toString()).isEqualTo(
+                "pod app-1: scheduled 1.0s, image pulled not reached, waiting app: ImagePullBackOff");
+    }
+
+    @Test @DisplayName("Profile the pods of the test namespace")
+    void profilePods() throws Exception {
+        //given
+        K8sCluster cluster = K8sCluster.builder().mock().uniqueNamespace(true).build();
+        cluster.setup();
+
+        try {
+            //when
+            cluster.createPod("app", "nginx").get(10, TimeUnit.SECONDS);
+
+            //then
+            assertThat(cluster.podStartups()).extracting(PodStartup::getPod).containsExactly("app");
+            assertThat(cluster.podStartup("app")).isPresent();
+        } finally {
+            cluster.tearDown();
+            cluster.disconnect();
+        }
+    }
+
+    private static Event event(String pod, String reason, String time) {
+        return new EventBuilder()
+                .withNewInvolvedObject().withKind("Pod").withName(pod).endInvolvedObject()
+                .withReason(reason)
+                .withFirstTimestamp(time)
+                .build();
+    }
+}
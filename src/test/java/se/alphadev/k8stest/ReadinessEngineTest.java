@@ -0,0 +1,128 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.awaitility.Awaitility.await;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ReadinessEngineTest {
+
+    private final K8sCluster cluster = K8sCluster.builder().mock().uniqueNamespace(true).build().setup();
+    private final KubernetesClient client = cluster.client();
+    private final ResourceCache cache = new ResourceCache(client, cluster.namespace());
+    private final ReadinessEngine readiness = new ReadinessEngine(client, cache, cluster.namespace(),
+            K8sExecutors.defaultExecutor(), new PodStartupProfiler(cache));
+
+    @AfterEach
+    void tearDown() {
+        readiness.close();
+        cache.close();
+        cluster.tearDown();
+        cluster.disconnect();
+    }
+
+    @Test @DisplayName("Wait for a replaced ready deployment until its controller has observed the new generation")
+    void replacedDeployment() throws Exception {
+        //given
+        client.apps().deployments().inNamespace(cluster.namespace()).create(deployment("nginx", 1L, 1L));
+        Deployment replaced = client.apps().deployments().inNamespace(cluster.namespace()).createOrReplace(deployment("nginx:1.19", 2L, 1L));
+
+        //when
+        CompletableFuture<Deployment> ready = readiness.whenReady(replaced, 10, TimeUnit.SECONDS);
+        boolean readyFromOldStatus = ready.isDone();
+        client.apps().deployments().inNamespace(cluster.namespace()).createOrReplace(deployment("nginx:1.19", 2L, 2L));
+
+        //then
+        assertThat(readyFromOldStatus).isFalse();
+        assertThat(ready.get(10, TimeUnit.SECONDS).getStatus().getObservedGeneration()).isEqualTo(2L);
+    }
+
+    @Test @DisplayName("Wait for a recreated pod, not the ready pod it replaces")
+    void recreatedPod() throws Exception {
+        //given
+        client.pods().inNamespace(cluster.namespace()).create(pod("old-uid"));
+
+        //when
+        CompletableFuture<Pod> ready = readiness.whenReady(pod("new-uid"), 10, TimeUnit.SECONDS);
+        boolean readyFromOldPod = ready.isDone();
+        client.pods().inNamespace(cluster.namespace()).withName("app").delete();
+        client.pods().inNamespace(cluster.namespace()).create(pod("new-uid"));
+
+        //then
+        assertThat(readyFromOldPod).isFalse();
+        assertThat(ready.get(10, TimeUnit.SECONDS).getMetadata().getUid()).isEqualTo("new-uid");
+    }
+
+    @Test @DisplayName("Wait for a pod replaced in place, not the ready copy from before the replace still in the cache")
+    void replacedInPlace() throws Exception {
+        //given
+        Pod before = pod("uid");
+        before.getMetadata().setResourceVersion("1");
+        client.pods().inNamespace(cluster.namespace()).create(before);
+        await().until(() -> cache.get(Pod.class, "app") != null);
+
+        //when
+        Pod applied = pod("uid");
+        applied.getMetadata().setResourceVersion("2");
+        applied.getSpec().getContainers().get(0).setImage("nginx:1.19");
+        CompletableFuture<Pod> ready = readiness.whenReady(applied, 10, TimeUnit.SECONDS);
+        boolean readyFromStaleCopy = ready.isDone();
+        client.pods().inNamespace(cluster.namespace()).withName("app").lockResourceVersion("2").replace(applied);
+
+        //then
+        assertThat(readyFromStaleCopy).isFalse();
+        assertThat(ready.get(10, TimeUnit.SECONDS).getSpec().getContainers().get(0).getImage()).isEqualTo("nginx:1.19");
+    }
+
+    @Test @DisplayName("Time out with the startup of the pods waited for")
+    void timeout() {
+        //given
+        Deployment notReady = client.apps().deployments().inNamespace(cluster.namespace()).create(deployment("nginx", 1L, 0L));
+
+        //when
+        Throwable failure = catchThrowable(() -> readiness.whenReady(notReady, 200, TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS));
+
+        //then
+        assertThat(failure).hasCauseInstanceOf(K8sClusterTimeoutException.class)
+                .hasMessageContaining("waiting for Deployment/app to be ready")
+                .hasMessageContaining("no pods found");
+    }
+
+    private Pod pod(String uid) {
+        return new PodBuilder()
+                .withNewMetadata().withName("app").withNamespace(cluster.namespace()).withUid(uid).endMetadata()
+                .withNewSpec().addNewContainer().withName("app").withImage("nginx").endContainer().endSpec()
+                .withNewStatus()
+                    .withPhase("Running")
+                    .addNewCondition().withType("Ready").withStatus("True").endCondition()
+                .endStatus()
+                .build();
+    }
+
+    private Deployment deployment(String image, long generation, long observedGeneration) {
+        return new DeploymentBuilder()
+                .withNewMetadata().withName("app").withNamespace(cluster.namespace()).withGeneration(generation).endMetadata()
+                .withNewSpec()
+                    .withReplicas(1)
+                    .withNewSelector().addToMatchLabels("app", "app").endSelector()
+                    .withNewTemplate().withNewMetadata().addToLabels("app", "app").endMetadata()
+                        .withNewSpec().addNewContainer().withName("app").withImage(image).endContainer().endSpec()
+                    .endTemplate()
+                .endSpec()
+                .withNewStatus()
+                    .withReplicas(1).withReadyReplicas(1).withAvailableReplicas(1).withUpdatedReplicas(1)
+                    .withObservedGeneration(observedGeneration)
+                .endStatus()
+                .build();
+    }
+}
@@ -0,0 +1,38 @@
+package se.alphadev.k8stest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ShellExecTest {
+
+    @Test @DisplayName("Capture the last lines of stdout and stderr")
+    void captureOutput() {
+        //when
+        ShellExec.Result result = ShellExec.command("sh", "-c", "seq 1 5000; echo failed >&2; exit 3").execute();
+
+        //then
+        assertThat(result.getExitCode()).isEqualTo(3);
+        assertThat(result.getStdout().split("\n")).hasSize(1000).startsWith("4001").endsWith("5000");
+        assertThat(result.getStderr()).isEqualTo("failed");
+    }
+
+    @Test @DisplayName("Kill a command running past its timeout")
+    void killOnTimeout() {
+        //given
+        long start = System.nanoTime();
+
+        //when
+        ShellExec.Result result = ShellExec.command("sh", "-c", "sleep 30")
+                .timeout(Duration.ofMillis(200))
+                .execute();
+
+        //then
+        assertThat(result.isTimedOut()).isTrue();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(15));
+        assertThatThrownBy(ShellExec.command("sh", "-c", "exit 1")::run).isInstanceOf(K8sClusterException.class);
+    }
+}
@@ -0,0 +1,54 @@
+package se.alphadev.k8stest.junit.extension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+import se.alphadev.k8stest.K8sCluster;
+
+public class K8sExtensionTest {
+
+    private static final Path METRICS_DIR = Paths.get("target", "k8s-extension-test-metrics");
+    private static final List<String> NAMESPACES = new CopyOnWriteArrayList<>();
+
+    @K8sTest
+    static class InstancePerMethod {
+
+        @K8sTestCluster
+        private K8sCluster cluster = K8sCluster.builder().mock().uniqueNamespace(true).apiMetrics(METRICS_DIR).build();
+
+        @Test
+        void first() {
+            NAMESPACES.add(cluster.namespace());
+        }
+
+        @Test
+        void second() {
+            NAMESPACES.add(cluster.namespace());
+        }
+    }
+
+    @Test @DisplayName("Tear down the cluster handle of every test instance of the class")
+    void tearDownEveryInstance() {
+        //given
+        SummaryGeneratingListener listener = new SummaryGeneratingListener();
+
+        //when
+        LauncherFactory.create().execute(LauncherDiscoveryRequestBuilder.request()
+                .selectors(selectClass(InstancePerMethod.class))
+                .build(), listener);
+
+        //then
+        assertThat(listener.getSummary().getTestsSucceededCount()).isEqualTo(2);
+        assertThat(NAMESPACES).hasSize(2).doesNotHaveDuplicates()
+                .allSatisfy(namespace -> assertThat(METRICS_DIR.resolve(namespace +".json")).exists());
+    }
+}